@@ -0,0 +1,182 @@
+package com.tbsg.h5.demo.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 批量合并加载器
+ *
+ * 把短时间内并发到达的单条查询合并为一次 IN 查询：
+ * 第一条查询到达后等待 windowMillis，或攒够 maxBatchSize 条时立即执行，查询结果按键分发给各调用方。
+ * 同一批次内相同的键只查询一次。
+ *
+ * 指标（tag loader={name}）：
+ * order.lookup-单条查询耗时（含等待窗口，带 P50/P95/P99），order.batch.load-批量查询耗时，
+ * order.batch.size-批次大小，order.batch.queries-实际数据库查询次数（对比 order.lookup 的 count 得出合并率）
+ *
+ * @param <T> 查询结果类型
+ * @author demo
+ */
+@Slf4j
+public class BatchLoader<T> {
+
+    private final String name;
+
+    private final Function<List<String>, Map<String, T>> batchFunction;
+
+    private final boolean enabled;
+
+    private final long windowMillis;
+
+    private final int maxBatchSize;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Timer lookupTimer;
+
+    private final Timer batchTimer;
+
+    private final DistributionSummary batchSize;
+
+    private final Counter batchQueries;
+
+    private final Object lock = new Object();
+
+    private Map<String, CompletableFuture<T>> pending = new LinkedHashMap<>();
+
+    private ScheduledFuture<?> flushTask;
+
+    /**
+     * @param name          加载器名称（指标 tag）
+     * @param batchFunction 批量查询：键列表 -> 键到结果的映射（不存在的键不返回）
+     * @param enabled       是否合并查询，关闭时每次查询直接执行（指标照常统计，便于对比）
+     * @param windowMillis  合并等待窗口（毫秒）
+     * @param maxBatchSize  单批最大键数
+     * @param meterRegistry 指标注册表
+     */
+    public BatchLoader(String name, Function<List<String>, Map<String, T>> batchFunction, boolean enabled,
+                       long windowMillis, int maxBatchSize, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.batchFunction = batchFunction;
+        this.enabled = enabled;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "batch-loader-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lookupTimer = Timer.builder("order.lookup").tag("loader", name)
+                .publishPercentiles(0.5, 0.95, 0.99).register(meterRegistry);
+        this.batchTimer = Timer.builder("order.batch.load").tag("loader", name)
+                .publishPercentiles(0.5, 0.95, 0.99).register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("order.batch.size").tag("loader", name).register(meterRegistry);
+        this.batchQueries = meterRegistry.counter("order.batch.queries", "loader", name);
+    }
+
+    /**
+     * 查询单个键，与并发到达的其他查询合并执行
+     *
+     * @param key 键
+     * @return 查询结果，不存在返回 null
+     */
+    public T load(String key) {
+        long startNanos = System.nanoTime();
+        try {
+            if (!enabled) {
+                return runBatch(Collections.singletonList(key)).get(key);
+            }
+            return enqueue(key).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        } finally {
+            lookupTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private CompletableFuture<T> enqueue(String key) {
+        Map<String, CompletableFuture<T>> fullBatch = null;
+        CompletableFuture<T> future;
+        synchronized (lock) {
+            future = pending.computeIfAbsent(key, k -> new CompletableFuture<>());
+            if (pending.size() >= maxBatchSize) {
+                fullBatch = drain();
+            } else if (flushTask == null) {
+                flushTask = scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (fullBatch != null) {
+            // 攒够一批时由当前线程直接执行，不等待窗口
+            complete(fullBatch);
+        }
+        return future;
+    }
+
+    private void flush() {
+        Map<String, CompletableFuture<T>> batch;
+        synchronized (lock) {
+            batch = drain();
+        }
+        if (!batch.isEmpty()) {
+            complete(batch);
+        }
+    }
+
+    /**
+     * 取出当前批次（调用方持有 lock）
+     */
+    private Map<String, CompletableFuture<T>> drain() {
+        Map<String, CompletableFuture<T>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        return batch;
+    }
+
+    private void complete(Map<String, CompletableFuture<T>> batch) {
+        try {
+            Map<String, T> results = runBatch(new ArrayList<>(batch.keySet()));
+            batch.forEach((key, future) -> future.complete(results.get(key)));
+        } catch (Exception e) {
+            log.error("【批量查询】{} 批量查询失败，批次大小: {}", name, batch.size(), e);
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    private Map<String, T> runBatch(List<String> keys) {
+        long startNanos = System.nanoTime();
+        try {
+            return batchFunction.apply(keys);
+        } finally {
+            batchTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            batchSize.record(keys.size());
+            batchQueries.increment();
+        }
+    }
+
+    /**
+     * 关闭调度线程（容器销毁时调用）
+     */
+    public void shutdown() {
+        scheduler.shutdown();
+        flush();
+    }
+}
@@ -0,0 +1,108 @@
+package com.tbsg.h5.demo.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tbsg.h5.demo.service.OssService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 账单下载地址缓存
+ *
+ * 按账单日期缓存 OSS 对象是否存在以及预签名 URL，避免平台反复轮询同一天账单时
+ * 每次都请求 OSS。缓存有效期必须小于预签名 URL 的有效期（1 小时），保证返回的 URL 仍然可用。
+ * 账单重新生成并上传后由 BillService 主动失效。
+ *
+ * 命中率等指标通过 /actuator/metrics/cache.gets?tag=cache:billUrlCache 查看
+ *
+ * @author demo
+ */
+@Slf4j
+@Component
+public class BillUrlCache {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${tbsg.bill.url-cache.max-size:100}")
+    private long maxSize;
+
+    @Value("${tbsg.bill.url-cache.ttl-minutes:50}")
+    private long ttlMinutes;
+
+    private Cache<String, BillUrl> cache;
+
+    @PostConstruct
+    public void init() {
+        // 预留 10 分钟余量，保证从缓存取出的 URL 至少还有 10 分钟有效期
+        long maxTtlMinutes = TimeUnit.SECONDS.toMinutes(OssService.PRESIGNED_URL_EXPIRE_SECONDS) - 10;
+        if (ttlMinutes > maxTtlMinutes) {
+            log.warn("【账单缓存】缓存有效期 {} 分钟超过预签名 URL 有效期，调整为 {} 分钟", ttlMinutes, maxTtlMinutes);
+            ttlMinutes = maxTtlMinutes;
+        }
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "billUrlCache");
+        log.info("【账单缓存】初始化完成，maxSize: {}, ttlMinutes: {}", maxSize, ttlMinutes);
+    }
+
+    /**
+     * 获取缓存的下载地址
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @return 缓存的下载地址，未命中返回 null
+     */
+    public BillUrl get(String billDate) {
+        return cache.getIfPresent(billDate);
+    }
+
+    /**
+     * 缓存账单下载地址（对象已确认存在于 OSS）
+     *
+     * @param billDate   账单日期（yyyy-MM-dd）
+     * @param objectName OSS 对象名称
+     * @param billUrl    预签名 URL
+     */
+    public void put(String billDate, String objectName, String billUrl) {
+        cache.put(billDate, new BillUrl(objectName, billUrl));
+    }
+
+    /**
+     * 使指定日期的缓存失效（账单重新生成后调用）
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     */
+    public void invalidate(String billDate) {
+        cache.invalidate(billDate);
+    }
+
+    /**
+     * 缓存的账单下载地址
+     */
+    @Data
+    @AllArgsConstructor
+    public static class BillUrl {
+
+        /**
+         * OSS 对象名称（缓存存在即表示该对象已存在于 OSS）
+         */
+        private String objectName;
+
+        /**
+         * 预签名下载 URL
+         */
+        private String billUrl;
+    }
+}
@@ -0,0 +1,42 @@
+package com.tbsg.h5.demo.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * 缓存失效总线
+ *
+ * 订单状态在任一实例上变更后，通过总线让所有实例失效本地缓存中的对应条目。
+ * 通过 tbsg.cache.invalidation.mode 选择实现：
+ * local-单实例内存实现（默认），db-polling-轮询失效日志表 cache_invalidation 的多实例实现
+ *
+ * @author demo
+ */
+public interface CacheInvalidationBus {
+
+    /**
+     * 发布失效事件（在写订单的事务中调用，多实例实现随事务一起提交）
+     *
+     * @param cacheName 缓存名称
+     * @param key       缓存键
+     */
+    void publish(String cacheName, String key);
+
+    /**
+     * 订阅指定缓存的失效事件
+     *
+     * @param cacheName 缓存名称
+     * @param listener  失效回调，参数为缓存键
+     */
+    void subscribe(String cacheName, Consumer<String> listener);
+
+    /**
+     * 非终态条目的最长缓存时间（秒）
+     *
+     * 多实例实现的失效事件存在传播延迟，非终态条目的缓存时间不应超过该值
+     *
+     * @return 最长缓存时间，不限制时返回 Long.MAX_VALUE
+     */
+    default long getNonTerminalTtlCapSeconds() {
+        return Long.MAX_VALUE;
+    }
+}
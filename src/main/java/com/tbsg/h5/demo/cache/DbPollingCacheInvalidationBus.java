@@ -0,0 +1,197 @@
+package com.tbsg.h5.demo.cache;
+
+import com.tbsg.h5.demo.entity.CacheInvalidation;
+import com.tbsg.h5.demo.mapper.CacheInvalidationMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 基于数据库轮询的多实例缓存失效总线
+ *
+ * 写入方在订单变更的同一事务中向 cache_invalidation 写入一条失效记录，记录与订单变更一起提交、一起回滚；
+ * 各实例按自增 ID 轮询游标之后的记录并失效本地缓存，读到记录时对应的订单变更一定已经提交。
+ *
+ * 自增 ID 在插入时分配、按提交顺序可见，游标之后可能出现空洞（事务未提交或已回滚）。
+ * 空洞 ID 会在后续轮询中按主键重新查询，超过 gap-timeout-seconds 仍不存在时视为已回滚并放弃。
+ * 轮询与过期记录清理在独立的单线程调度器上执行，不占用 @Scheduled 共享线程
+ *
+ * @author demo
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "tbsg.cache.invalidation.mode", havingValue = "db-polling")
+public class DbPollingCacheInvalidationBus implements CacheInvalidationBus {
+
+    /**
+     * 单次清理的最大条数
+     */
+    private static final int PURGE_BATCH_SIZE = 1000;
+
+    @Autowired
+    private CacheInvalidationMapper cacheInvalidationMapper;
+
+    @Autowired
+    private ThreadPoolTaskScheduler cacheInvalidationScheduler;
+
+    @Value("${tbsg.cache.invalidation.poll-interval-millis:1000}")
+    private long pollIntervalMillis;
+
+    @Value("${tbsg.cache.invalidation.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * 空洞 ID 的最长等待时间（秒），应大于写订单事务的最长耗时
+     */
+    @Value("${tbsg.cache.invalidation.gap-timeout-seconds:60}")
+    private long gapTimeoutSeconds;
+
+    /**
+     * 失效记录保留时间（分钟），应大于 gap-timeout-seconds
+     */
+    @Value("${tbsg.cache.invalidation.retention-minutes:60}")
+    private long retentionMinutes;
+
+    /**
+     * 非终态条目的最长缓存时间（秒），兜底放弃空洞等极端情况
+     */
+    @Value("${tbsg.cache.invalidation.non-terminal-ttl-cap-seconds:5}")
+    private long nonTerminalTtlCapSeconds;
+
+    private final Map<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * 已读取的最大 ID，-1 表示尚未初始化（以下状态只在调度线程中访问）
+     */
+    private long cursor = -1;
+
+    /**
+     * 游标之前尚未读到的空洞 ID -> 发现时间（毫秒）
+     */
+    private final TreeMap<Long, Long> gaps = new TreeMap<>();
+
+    @PostConstruct
+    public void init() {
+        cacheInvalidationScheduler.scheduleWithFixedDelay(this::poll, Duration.ofMillis(pollIntervalMillis));
+        cacheInvalidationScheduler.scheduleWithFixedDelay(this::purge, Duration.ofMinutes(1));
+        log.info("【缓存失效】数据库轮询总线已启动，pollIntervalMillis: {}, gapTimeoutSeconds: {}, retentionMinutes: {}",
+                pollIntervalMillis, gapTimeoutSeconds, retentionMinutes);
+    }
+
+    /**
+     * 写入失效记录；在写订单的事务中调用时随事务一起提交
+     */
+    @Override
+    public void publish(String cacheName, String key) {
+        CacheInvalidation invalidation = new CacheInvalidation();
+        invalidation.setCacheName(cacheName);
+        invalidation.setCacheKey(key);
+        cacheInvalidationMapper.insert(invalidation);
+    }
+
+    @Override
+    public void subscribe(String cacheName, Consumer<String> listener) {
+        listeners.computeIfAbsent(cacheName, name -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    @Override
+    public long getNonTerminalTtlCapSeconds() {
+        return nonTerminalTtlCapSeconds;
+    }
+
+    /**
+     * 轮询失效记录并失效本地缓存
+     */
+    void poll() {
+        try {
+            if (cursor < 0) {
+                // 启动前的变更与本实例的空缓存无关
+                cursor = cacheInvalidationMapper.selectMaxId();
+            }
+            long now = System.currentTimeMillis();
+            recheckGaps(now);
+
+            List<CacheInvalidation> rows;
+            do {
+                rows = cacheInvalidationMapper.selectAfter(cursor, batchSize);
+                for (CacheInvalidation row : rows) {
+                    recordGaps(row.getId(), now);
+                    dispatch(row);
+                    cursor = row.getId();
+                }
+            } while (rows.size() == batchSize);
+        } catch (Exception e) {
+            // 游标只随已分发的记录推进，下次轮询从中断处继续
+            log.error("【缓存失效】轮询失效记录失败，cursor: {}", cursor, e);
+        }
+    }
+
+    /**
+     * 按主键重新查询空洞 ID，已提交的记录补发失效，超时的空洞放弃
+     */
+    private void recheckGaps(long now) {
+        if (gaps.isEmpty()) {
+            return;
+        }
+        for (CacheInvalidation row : cacheInvalidationMapper.selectBatchIds(new ArrayList<>(gaps.keySet()))) {
+            gaps.remove(row.getId());
+            dispatch(row);
+        }
+        long timeoutMillis = gapTimeoutSeconds * 1000;
+        gaps.values().removeIf(discoveredAt -> now - discoveredAt >= timeoutMillis);
+    }
+
+    /**
+     * 记录游标与新读到的 ID 之间的空洞
+     */
+    private void recordGaps(long id, long now) {
+        long gapSize = id - cursor - 1;
+        if (gapSize <= 0) {
+            return;
+        }
+        if (gapSize > batchSize) {
+            // 自增值跳跃（如实例重启、批量预分配），不是在途事务
+            log.warn("【缓存失效】失效记录 ID 跳跃，忽略空洞，cursor: {}, id: {}", cursor, id);
+            return;
+        }
+        for (long gapId = cursor + 1; gapId < id; gapId++) {
+            gaps.put(gapId, now);
+        }
+    }
+
+    /**
+     * 清理超过保留时间的失效记录
+     */
+    void purge() {
+        try {
+            LocalDateTime before = LocalDateTime.now().minusMinutes(retentionMinutes);
+            int deleted;
+            do {
+                deleted = cacheInvalidationMapper.deleteBefore(before, PURGE_BATCH_SIZE);
+            } while (deleted == PURGE_BATCH_SIZE);
+        } catch (Exception e) {
+            log.error("【缓存失效】清理失效记录失败", e);
+        }
+    }
+
+    private void dispatch(CacheInvalidation row) {
+        listeners.getOrDefault(row.getCacheName(), Collections.emptyList())
+                .forEach(listener -> listener.accept(row.getCacheKey()));
+        log.debug("【缓存失效】失效缓存，id: {}, cacheName: {}, key: {}", row.getId(), row.getCacheName(), row.getCacheKey());
+    }
+}
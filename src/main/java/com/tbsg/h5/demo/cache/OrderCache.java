@@ -0,0 +1,327 @@
+package com.tbsg.h5.demo.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 订单缓存基类
+ *
+ * 终态订单不会再变化，缓存时间更长；非终态订单只短暂缓存。
+ * 写入订单后调用 {@link #evict} 立即失效本地缓存，事务结束后再失效一次，并通过 {@link CacheInvalidationBus}
+ * 通知其他实例，避免并发读取在事务提交前把旧状态重新写回缓存。
+ *
+ * 不存在的订单号：
+ * 1. 负缓存：查询不到的订单号短暂缓存，平台对未知单号的重试风暴不会反复查询数据库
+ * 2. 布隆过滤器（可选）：启动后从唯一索引扫描全部订单号（含已归档的订单号）构建，判定一定不存在的单号直接返回，不查数据库。
+ *    多实例部署时其他实例新建的订单要等失效事件到达后才会写入本地过滤器，因此只在单实例模式下启用
+ *
+ * 命中率等指标通过 /actuator/metrics/cache.gets?tag=cache:{name}Cache 查看，
+ * 布隆过滤器的误判率和内存占用通过 order.bloom.* 指标查看
+ *
+ * @param <T> 订单类型
+ * @author demo
+ */
+@Slf4j
+public abstract class OrderCache<T> {
+
+    /**
+     * 失效版本号的分段数
+     */
+    private static final int INVALIDATION_STRIPES = 1024;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    /**
+     * 不存在订单的负缓存时间（秒），0 表示不缓存
+     */
+    @Value("${tbsg.cache.negative-ttl-seconds:5}")
+    private long negativeTtlSeconds;
+
+    @Value("${tbsg.cache.bloom.enabled:false}")
+    private boolean bloomEnabled;
+
+    @Value("${tbsg.cache.bloom.expected-insertions:1000000}")
+    private long bloomExpectedInsertions;
+
+    @Value("${tbsg.cache.bloom.fpp:0.01}")
+    private double bloomFpp;
+
+    private final String name;
+
+    private final Supplier<T> factory;
+
+    private Cache<String, T> cache;
+
+    private Cache<String, Boolean> negativeCache;
+
+    /**
+     * 按键分段的失效版本号，失效时递增；查询不到的订单只有在加载期间未被失效时才保留负缓存
+     */
+    private final AtomicLongArray invalidationVersions = new AtomicLongArray(INVALIDATION_STRIPES);
+
+    /**
+     * 布隆过滤器，构建期间即可写入，构建完成（bloomReady）后才用于判定
+     */
+    private volatile BloomFilter bloomFilter;
+
+    private volatile boolean bloomReady;
+
+    /**
+     * 布隆过滤器判定不存在、未查询数据库的次数
+     */
+    private Counter bloomRejected;
+
+    /**
+     * 布隆过滤器判定可能存在、但数据库中不存在的次数
+     */
+    private Counter bloomFalsePositive;
+
+    protected OrderCache(String name, Supplier<T> factory) {
+        this.name = name;
+        this.factory = factory;
+    }
+
+    /**
+     * 最大缓存条数
+     */
+    protected abstract long getMaxSize();
+
+    /**
+     * 非终态订单缓存时间（秒）
+     */
+    protected abstract long getTtlSeconds();
+
+    /**
+     * 终态订单缓存时间（秒）
+     */
+    protected abstract long getTerminalTtlSeconds();
+
+    /**
+     * 是否为终态订单
+     */
+    protected abstract boolean isTerminal(T order);
+
+    /**
+     * 流式扫描全部订单号，包括已归档的订单号（用于构建布隆过滤器）
+     *
+     * @param consumer 逐个接收订单号
+     */
+    protected abstract void scanKeys(Consumer<String> consumer);
+
+    @PostConstruct
+    public void init() {
+        long ttlSeconds = Math.min(getTtlSeconds(), cacheInvalidationBus.getNonTerminalTtlCapSeconds());
+        long terminalTtlSeconds = getTerminalTtlSeconds();
+        cache = Caffeine.newBuilder()
+                .maximumSize(getMaxSize())
+                .expireAfter(new Expiry<String, T>() {
+                    @Override
+                    public long expireAfterCreate(String key, T order, long currentTime) {
+                        return TimeUnit.SECONDS.toNanos(isTerminal(order) ? terminalTtlSeconds : ttlSeconds);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, T order, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, order, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, T order, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        negativeCache = Caffeine.newBuilder()
+                .maximumSize(getMaxSize())
+                .expireAfterWrite(negativeTtlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name + "Cache");
+        CaffeineCacheMetrics.monitor(meterRegistry, negativeCache, name + "NegativeCache");
+        cacheInvalidationBus.subscribe(name, this::invalidateLocal);
+
+        bloomRejected = meterRegistry.counter("order.bloom.rejected", "cache", name);
+        bloomFalsePositive = meterRegistry.counter("order.bloom.false.positive", "cache", name);
+        Gauge.builder("order.bloom.expected.fpp", this, c -> c.bloomFilter == null ? 0 : c.bloomFilter.expectedFpp())
+                .tag("cache", name).register(meterRegistry);
+        Gauge.builder("order.bloom.observed.fpp", this, OrderCache::observedFpp)
+                .tag("cache", name).register(meterRegistry);
+        Gauge.builder("order.bloom.memory.bytes", this, c -> c.bloomFilter == null ? 0 : c.bloomFilter.memoryBytes())
+                .tag("cache", name).register(meterRegistry);
+
+        log.info("【订单缓存】{} 初始化完成，maxSize: {}, ttlSeconds: {}, terminalTtlSeconds: {}, negativeTtlSeconds: {}",
+                name, getMaxSize(), ttlSeconds, terminalTtlSeconds, negativeTtlSeconds);
+    }
+
+    /**
+     * 应用启动完成后构建布隆过滤器，构建期间查询照常走数据库
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildBloomFilter() {
+        if (!bloomEnabled) {
+            return;
+        }
+        if (cacheInvalidationBus.getNonTerminalTtlCapSeconds() != Long.MAX_VALUE) {
+            log.warn("【订单缓存】{} 多实例缓存失效模式下不启用布隆过滤器，其他实例新建的订单无法及时写入本地过滤器", name);
+            return;
+        }
+
+        long startMillis = System.currentTimeMillis();
+        BloomFilter filter = new BloomFilter(bloomExpectedInsertions, bloomFpp);
+        bloomFilter = filter;
+        try {
+            scanKeys(filter::put);
+        } catch (Exception e) {
+            bloomFilter = null;
+            log.error("【订单缓存】{} 布隆过滤器构建失败，回退为查询数据库", name, e);
+            return;
+        }
+        bloomReady = true;
+        log.info("【订单缓存】{} 布隆过滤器构建完成，元素数: {}, 位数: {}, 哈希函数: {}, 内存: {} KB, 预期误判率: {}, 耗时: {} ms",
+                name, filter.getInsertions(), filter.getBitSize(), filter.getHashCount(), filter.memoryBytes() / 1024,
+                String.format("%.6f", filter.expectedFpp()), System.currentTimeMillis() - startMillis);
+    }
+
+    /**
+     * 获取订单，未命中时通过 loader 从数据库加载并缓存
+     *
+     * 订单不存在时写入负缓存；布隆过滤器判定一定不存在时直接返回 null
+     *
+     * @param key    缓存键
+     * @param loader 数据库加载逻辑
+     * @return 订单副本，不存在返回 null
+     */
+    public T get(String key, Function<String, T> loader) {
+        if (negativeCache.getIfPresent(key) != null) {
+            return null;
+        }
+        boolean bloomChecked = bloomReady;
+        if (bloomChecked && !bloomFilter.mightContain(key)) {
+            bloomRejected.increment();
+            return null;
+        }
+
+        int stripe = stripe(key);
+        long version = invalidationVersions.get(stripe);
+        T order = cache.get(key, loader);
+        if (order == null) {
+            if (bloomChecked) {
+                bloomFalsePositive.increment();
+            }
+            if (negativeTtlSeconds > 0) {
+                // 先写入再检查：加载期间订单被创建并失效时撤销负缓存，
+                // 检查之后才发生的失效会在 invalidateLocal 中清除这里写入的条目
+                negativeCache.put(key, Boolean.TRUE);
+                if (invalidationVersions.get(stripe) != version) {
+                    negativeCache.invalidate(key);
+                }
+            }
+        }
+        return copy(order);
+    }
+
+    /**
+     * 订单是否可能存在（布隆过滤器未启用或未构建完成时返回 true）
+     *
+     * 用于在订单表中查询不到时决定是否走归档查询等慢路径，布隆过滤器包含已归档的订单号
+     *
+     * @param key 缓存键
+     * @return 布隆过滤器判定一定不存在时返回 false
+     */
+    public boolean mightExist(String key) {
+        return !bloomReady || bloomFilter.mightContain(key);
+    }
+
+    /**
+     * 获取已缓存的订单，不查询数据库
+     *
+     * @param key 缓存键
+     * @return 订单副本，未缓存返回 null
+     */
+    public T getIfPresent(String key) {
+        return copy(cache.getIfPresent(key));
+    }
+
+    /**
+     * 失效指定订单的缓存（在写订单的事务中、订单新建或更新后调用）
+     *
+     * 失效事件在当前事务中发布，多实例实现随订单变更一起提交；事务结束后本实例再失效一次
+     *
+     * @param key 缓存键
+     */
+    public void evict(String key) {
+        invalidateLocal(key);
+        cacheInvalidationBus.publish(name, key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidateLocal(key);
+                }
+            });
+        }
+    }
+
+    /**
+     * 失效本地缓存；订单可能是新建的，同时清除负缓存并写入布隆过滤器
+     */
+    private void invalidateLocal(String key) {
+        BloomFilter filter = bloomFilter;
+        if (filter != null) {
+            filter.put(key);
+        }
+        invalidationVersions.incrementAndGet(stripe(key));
+        negativeCache.invalidate(key);
+        cache.invalidate(key);
+    }
+
+    private static int stripe(String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % INVALIDATION_STRIPES;
+    }
+
+    /**
+     * 实际观测到的误判率：误判次数 / (误判次数 + 判定不存在次数)
+     */
+    private double observedFpp() {
+        double falsePositives = bloomFalsePositive.count();
+        double total = falsePositives + bloomRejected.count();
+        return total == 0 ? 0 : falsePositives / total;
+    }
+
+    /**
+     * 返回副本，避免调用方修改缓存中的对象
+     */
+    private T copy(T order) {
+        if (order == null) {
+            return null;
+        }
+        T copy = factory.get();
+        BeanUtils.copyProperties(order, copy);
+        return copy;
+    }
+}
@@ -0,0 +1,75 @@
+package com.tbsg.h5.demo.cache;
+
+import com.tbsg.h5.demo.entity.PaymentOrder;
+import com.tbsg.h5.demo.enums.TransType;
+import com.tbsg.h5.demo.mapper.OrderArchiveIndexMapper;
+import com.tbsg.h5.demo.mapper.PaymentOrderMapper;
+import eleme.openapi.h5.sdk.pay.enums.PayStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Consumer;
+
+/**
+ * 支付订单缓存
+ *
+ * 按 transactionId 缓存支付订单，平台高频轮询 queryPay 时不再每次查询数据库。
+ * 只有 SUCCESS 是终态、缓存时间更长；CLOSED 的订单仍可能被支付结果通知改为 SUCCESS，按非终态缓存
+ *
+ * @author demo
+ */
+@Component
+public class PaymentOrderCache extends OrderCache<PaymentOrder> {
+
+    /**
+     * 缓存名称
+     */
+    public static final String NAME = "paymentOrder";
+
+    @Autowired
+    private PaymentOrderMapper paymentOrderMapper;
+
+    @Autowired
+    private OrderArchiveIndexMapper orderArchiveIndexMapper;
+
+    @Value("${tbsg.cache.payment-order.max-size:10000}")
+    private long maxSize;
+
+    @Value("${tbsg.cache.payment-order.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Value("${tbsg.cache.payment-order.terminal-ttl-seconds:1800}")
+    private long terminalTtlSeconds;
+
+    public PaymentOrderCache() {
+        super(NAME, PaymentOrder::new);
+    }
+
+    @Override
+    protected long getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    protected long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    @Override
+    protected long getTerminalTtlSeconds() {
+        return terminalTtlSeconds;
+    }
+
+    @Override
+    protected boolean isTerminal(PaymentOrder order) {
+        return PayStatus.SUCCESS.getCode().equals(order.getPayStatus());
+    }
+
+    @Override
+    protected void scanKeys(Consumer<String> consumer) {
+        paymentOrderMapper.streamAllTransactionIds(context -> consumer.accept(context.getResultObject()));
+        orderArchiveIndexMapper.streamBizNosByOrderType(TransType.PAY.getCode(),
+                context -> consumer.accept(context.getResultObject()));
+    }
+}
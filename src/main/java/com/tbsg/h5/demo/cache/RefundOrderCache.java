@@ -0,0 +1,75 @@
+package com.tbsg.h5.demo.cache;
+
+import com.tbsg.h5.demo.entity.RefundOrder;
+import com.tbsg.h5.demo.enums.TransType;
+import com.tbsg.h5.demo.mapper.OrderArchiveIndexMapper;
+import com.tbsg.h5.demo.mapper.RefundOrderMapper;
+import eleme.openapi.h5.sdk.pay.enums.RefundStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Consumer;
+
+/**
+ * 退款订单缓存
+ *
+ * 按 refundNo 缓存退款订单，终态退款（SUCCESS/FAIL）缓存时间更长
+ *
+ * @author demo
+ */
+@Component
+public class RefundOrderCache extends OrderCache<RefundOrder> {
+
+    /**
+     * 缓存名称
+     */
+    public static final String NAME = "refundOrder";
+
+    @Autowired
+    private RefundOrderMapper refundOrderMapper;
+
+    @Autowired
+    private OrderArchiveIndexMapper orderArchiveIndexMapper;
+
+    @Value("${tbsg.cache.refund-order.max-size:10000}")
+    private long maxSize;
+
+    @Value("${tbsg.cache.refund-order.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Value("${tbsg.cache.refund-order.terminal-ttl-seconds:1800}")
+    private long terminalTtlSeconds;
+
+    public RefundOrderCache() {
+        super(NAME, RefundOrder::new);
+    }
+
+    @Override
+    protected long getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    protected long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    @Override
+    protected long getTerminalTtlSeconds() {
+        return terminalTtlSeconds;
+    }
+
+    @Override
+    protected boolean isTerminal(RefundOrder order) {
+        return RefundStatus.SUCCESS.getCode().equals(order.getRefundStatus())
+                || RefundStatus.FAIL.getCode().equals(order.getRefundStatus());
+    }
+
+    @Override
+    protected void scanKeys(Consumer<String> consumer) {
+        refundOrderMapper.streamAllRefundNos(context -> consumer.accept(context.getResultObject()));
+        orderArchiveIndexMapper.streamBizNosByOrderType(TransType.REFUND.getCode(),
+                context -> consumer.accept(context.getResultObject()));
+    }
+}
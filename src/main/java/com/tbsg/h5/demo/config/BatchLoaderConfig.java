@@ -0,0 +1,58 @@
+package com.tbsg.h5.demo.config;
+
+import com.tbsg.h5.demo.cache.BatchLoader;
+import com.tbsg.h5.demo.entity.PaymentOrder;
+import com.tbsg.h5.demo.entity.RefundOrder;
+import com.tbsg.h5.demo.mapper.PaymentOrderMapper;
+import com.tbsg.h5.demo.mapper.RefundOrderMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 批量合并查询配置类
+ *
+ * 订单缓存未命中时的数据库查询经过 BatchLoader 合并为 IN 查询
+ *
+ * @author demo
+ */
+@Configuration
+public class BatchLoaderConfig {
+
+    @Value("${tbsg.cache.batch.enabled:false}")
+    private boolean enabled;
+
+    @Value("${tbsg.cache.batch.window-millis:2}")
+    private long windowMillis;
+
+    @Value("${tbsg.cache.batch.max-size:100}")
+    private int maxBatchSize;
+
+    /**
+     * 支付订单批量加载器（按 transactionId）
+     */
+    @Bean(destroyMethod = "shutdown")
+    public BatchLoader<PaymentOrder> paymentOrderBatchLoader(PaymentOrderMapper paymentOrderMapper,
+                                                             MeterRegistry meterRegistry) {
+        return new BatchLoader<>("paymentOrder",
+                keys -> paymentOrderMapper.selectByTransactionIds(keys).stream()
+                        .collect(Collectors.toMap(PaymentOrder::getTransactionId, Function.identity())),
+                enabled, windowMillis, maxBatchSize, meterRegistry);
+    }
+
+    /**
+     * 退款订单批量加载器（按 refundNo）
+     */
+    @Bean(destroyMethod = "shutdown")
+    public BatchLoader<RefundOrder> refundOrderBatchLoader(RefundOrderMapper refundOrderMapper,
+                                                           MeterRegistry meterRegistry) {
+        return new BatchLoader<>("refundOrder",
+                keys -> refundOrderMapper.selectByRefundNos(keys).stream()
+                        .collect(Collectors.toMap(RefundOrder::getRefundNo, Function.identity())),
+                enabled, windowMillis, maxBatchSize, meterRegistry);
+    }
+}
@@ -0,0 +1,185 @@
+package com.tbsg.h5.demo.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 线程池配置类
+ *
+ * 所有后台线程池统一在此定义，均为有界线程池 + 有界队列
+ *
+ * @author demo
+ */
+@Configuration
+public class ExecutorConfig {
+
+    @Value("${tbsg.bill.export.partitions:1}")
+    private int billExportPartitions;
+
+    @Value("${aliyun.oss.multipart.parallelism:4}")
+    private int ossUploadParallelism;
+
+    @Value("${tbsg.bill.job.pool-size:2}")
+    private int billJobPoolSize;
+
+    @Value("${tbsg.bill.job.queue-capacity:100}")
+    private int billJobQueueCapacity;
+
+    @Value("${tbsg.notify.pool-size:8}")
+    private int notifyPoolSize;
+
+    @Value("${tbsg.notify.queue-capacity:1000}")
+    private int notifyQueueCapacity;
+
+    @Value("${spring.task.scheduling.pool.size:4}")
+    private int schedulingPoolSize;
+
+    /**
+     * 账单分片导出线程池
+     *
+     * 线程数与分片数一致，每个分片占用一个数据库连接，
+     * 分片数不应超过 hikari.maximum-pool-size
+     */
+    @Bean
+    public ThreadPoolTaskExecutor billExportExecutor() {
+        int poolSize = Math.max(1, billExportPartitions);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        // 每个分片按交易类型（pay/refund）各拆一个任务
+        executor.setQueueCapacity(poolSize * 4);
+        executor.setThreadNamePrefix("bill-export-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        return executor;
+    }
+
+    /**
+     * OSS 分片上传线程池
+     *
+     * 单个上传流的在途分片数由 aliyun.oss.multipart.parallelism 限制，
+     * 多个上传流同时进行时超出队列的任务由调用线程执行
+     */
+    @Bean
+    public ThreadPoolTaskExecutor ossUploadExecutor() {
+        int poolSize = Math.max(1, ossUploadParallelism);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(poolSize * 4);
+        executor.setThreadNamePrefix("oss-upload-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        return executor;
+    }
+
+    /**
+     * 账单生成任务线程池
+     *
+     * 与 Tomcat 请求线程隔离，队列满时拒绝提交，由调用方返回"稍后重试"
+     */
+    @Bean
+    public ThreadPoolTaskExecutor billJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, billJobPoolSize));
+        executor.setMaxPoolSize(Math.max(1, billJobPoolSize));
+        executor.setQueueCapacity(billJobQueueCapacity);
+        executor.setThreadNamePrefix("bill-job-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        return executor;
+    }
+
+    /**
+     * 回调通知发送线程池
+     *
+     * 与 Tomcat 请求线程隔离，淘宝闪购响应慢时只占用本线程池；
+     * 队列满时拒绝提交，通知保留在发件箱中由定时扫描重试
+     */
+    @Bean
+    public ThreadPoolTaskExecutor notifyExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, notifyPoolSize));
+        executor.setMaxPoolSize(Math.max(1, notifyPoolSize));
+        executor.setQueueCapacity(notifyQueueCapacity);
+        executor.setThreadNamePrefix("notify-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        return executor;
+    }
+
+    /**
+     * 订单归档线程池
+     *
+     * 单线程且不排队：归档耗时较长，不占用 @Scheduled 线程；上一轮未结束时拒绝提交
+     */
+    @Bean
+    public ThreadPoolTaskExecutor orderArchiveExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("order-archive-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        return executor;
+    }
+
+    /**
+     * 账单记录异步批量写入调度器（tbsg.bill.record.write-mode=write-behind 时使用）
+     *
+     * 单线程，定时刷盘和攒够批次触发的刷盘串行执行；停机时等待进行中的刷盘完成
+     */
+    @Bean
+    public ThreadPoolTaskScheduler billRecordFlushScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("bill-record-flusher-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(10);
+        return scheduler;
+    }
+
+    /**
+     * @Scheduled 定时任务调度器
+     *
+     * 定义了其他 TaskScheduler 后 Spring Boot 不再自动配置调度器，@Scheduled 按名称 taskScheduler 使用本调度器，
+     * 线程数沿用 spring.task.scheduling.pool.size（默认 4），避免各定时任务在单线程上相互阻塞
+     */
+    @Bean
+    @Primary
+    public ThreadPoolTaskScheduler taskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(Math.max(1, schedulingPoolSize));
+        scheduler.setThreadNamePrefix("scheduling-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(60);
+        return scheduler;
+    }
+
+    /**
+     * 多实例缓存失效轮询调度器
+     *
+     * 单线程，与 @Scheduled 定时任务隔离，账单生成、订单归档等长任务不会推迟缓存失效
+     */
+    @Bean
+    @ConditionalOnProperty(name = "tbsg.cache.invalidation.mode", havingValue = "db-polling")
+    public ThreadPoolTaskScheduler cacheInvalidationScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("cache-invalidation-");
+        return scheduler;
+    }
+}
@@ -1,7 +1,6 @@
 package com.tbsg.h5.demo.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.tbsg.h5.demo.entity.PaymentOrder;
 import com.tbsg.h5.demo.service.PaymentService;
 import com.tbsg.h5.demo.constants.PaymentConstants;
 import eleme.openapi.h5.sdk.pay.model.request.PayCallbackRequest;
@@ -31,8 +30,8 @@ import static eleme.openapi.sdk.utils.WebUtils.buildQuery;
  * 回调流程：
  * 1. 用户在收银台完成支付
  * 2. 收银台回调机构服务端（本接口）
- * 3. 机构更新订单状态
- * 4. 机构调用 SDK 的 payCallback() 通知淘宝闪购
+ * 3. 机构更新订单状态，同一事务中写入通知发件箱
+ * 4. 事务提交后由 NotifyOutboxService 异步调用 SDK 的 payCallback() 通知淘宝闪购（失败自动重试）
  * 5. 重定向到中间页，最终跳转到淘宝闪购订单详情页
  *
  * @author demo
@@ -46,9 +45,6 @@ public class TbsgCallbackController extends BaseCallbackService {
     @Autowired
     private PaymentService paymentService;
 
-    @Value("${tbsg.pay.code}")
-    private String payCode;
-
     @Value("${tbsg.pay.intermediateUrl}")
     private String intermediateUrl;
 
@@ -71,9 +67,8 @@ public class TbsgCallbackController extends BaseCallbackService {
      *
      * 流程：
      * 1. 收银台回调机构，通知支付结果
-     * 2. 机构更新订单状态
-     * 3. 机构调用 SDK 的 payCallback() 通知淘宝闪购
-     * 4. 返回重定向 URL，跳转到中间页
+     * 2. 机构更新订单状态，并在同一事务中写入通知发件箱
+     * 3. 事务提交后立即返回重定向 URL，跳转到中间页；通知淘宝闪购由后台异步完成
      *
      * @param responseBody 收银台回调的请求体
      * @param httpServletRequest HTTP 请求
@@ -113,41 +108,22 @@ public class TbsgCallbackController extends BaseCallbackService {
             log.info("【支付回调】支付成功，transactionId: {}, payAmount: {}, notifyUrl: {}",
                     transactionId, payAmount, notifyUrl);
 
-            // 3. 更新订单状态为支付成功，并获取最新订单信息（包含正确的 outTradeNo）
-            PaymentOrder order = paymentService.updateOrderStatus(transactionId, PaymentConstants.SUCCESS);
-
-            // 4. 创建支付回调请求对象
-            PayCallbackRequest request = new PayCallbackRequest();
-            request.setPayCode(payCode);
-            request.setTransactionId(transactionId);
-            request.setOutTradeNo(order.getOutTradeNo()); // 使用订单中原有的机构订单号
-            request.setPayAmount(payAmount);
-            request.setPayStatus(PaymentConstants.SUCCESS);
-
-            log.info("【支付回调】准备回调通知淘宝闪购，request: {}", request);
-
-            // 5. 调用 SDK 的 payCallback() 通知淘宝闪购
-            boolean callbackResult = payCallback(request, notifyUrl);
-
-            if (!callbackResult) {
-                log.error("【支付回调】回调淘宝闪购失败");
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                        .body(Collections.singletonMap("message", "回调淘宝闪购失败"));
-            }
+            // 3. 更新订单状态为支付成功，同一事务中写入通知发件箱（通知使用订单中原有的 outTradeNo）
+            paymentService.updateOrderStatus(transactionId, PaymentConstants.SUCCESS, notifyUrl);
 
-            // 6. 回调成功，准备重定向数据
+            // 4. 准备重定向数据
             Map<String, String> payData = new HashMap<>();
             payData.put("notifyUrl", notifyUrl);
             payData.put("transactionId", transactionId);
             payData.put("payAmount", payAmountStr);
             payData.put("redirectUrl", redirectUrl);
 
-            // 7. 构建重定向 URL（跳转到中间页）
+            // 5. 构建重定向 URL（跳转到中间页）
             String newRedirectUrl = intermediateUrl + "?" + buildQuery(payData, "utf-8");
 
-            log.info("【支付回调】回调淘宝闪购成功，重定向到中间页: {}", newRedirectUrl);
+            log.info("【支付回调】订单已更新，异步通知淘宝闪购，重定向到中间页: {}", newRedirectUrl);
 
-            // 8. 返回重定向 URL
+            // 6. 返回重定向 URL
             Map<String, String> response = new HashMap<>();
             response.put("redirectUrl", newRedirectUrl);
             return ResponseEntity.ok(response);
@@ -164,9 +140,37 @@ public class TbsgCallbackController extends BaseCallbackService {
     }
 
     /**
-     * 退款回调（由 PaymentService 调用）
+     * 支付结果回调（由 SdkCallbackTransport 调用）
+     *
+     * @param payCallbackRequest 支付回调请求
+     * @param notifyUrl 淘宝闪购的回调地址
+     * @return 是否回调成功
+     */
+    public boolean notifyPayCallback(PayCallbackRequest payCallbackRequest, String notifyUrl) {
+        try {
+            log.info("【支付回调】准备回调通知淘宝闪购，request: {}, notifyUrl: {}",
+                    payCallbackRequest, notifyUrl);
+
+            // 调用 SDK 的 payCallback() 通知淘宝闪购
+            boolean result = payCallback(payCallbackRequest, notifyUrl);
+
+            if (result) {
+                log.info("【支付回调】回调淘宝闪购成功");
+            } else {
+                log.error("【支付回调】回调淘宝闪购失败");
+            }
+
+            return result;
+        } catch (Exception e) {
+            log.error("【支付回调】回调淘宝闪购异常", e);
+            return false;
+        }
+    }
+
+    /**
+     * 退款回调（由 SdkCallbackTransport 调用）
      *
-     * 当机构处理完退款后，调用此方法通知淘宝闪购退款结果
+     * 当机构处理完退款后，发件箱调用此方法通知淘宝闪购退款结果，返回 false 时按退避间隔重试
      *
      * @param refundCallbackRequest 退款回调请求
      * @param notifyUrl 淘宝闪购的回调地址
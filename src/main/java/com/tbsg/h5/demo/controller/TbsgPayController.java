@@ -1,7 +1,9 @@
 package com.tbsg.h5.demo.controller;
 
+import com.tbsg.h5.demo.entity.BillJob;
+import com.tbsg.h5.demo.enums.BillJobStatus;
+import com.tbsg.h5.demo.service.BillJobService;
 import com.tbsg.h5.demo.service.BillService;
-import com.tbsg.h5.demo.service.OssService;
 import com.tbsg.h5.demo.service.PaymentService;
 import com.tbsg.h5.demo.constants.PaymentConstants;
 import eleme.openapi.h5.sdk.pay.model.request.*;
@@ -37,7 +39,7 @@ public class TbsgPayController extends BasePayService {
     private BillService billService;
 
     @Autowired
-    private OssService ossService;
+    private BillJobService billJobService;
 
     @Value("${tbsg.pay.platformPublicKey}")
     private String platformPublicKey;
@@ -45,9 +47,6 @@ public class TbsgPayController extends BasePayService {
     @Value("${tbsg.pay.merchantPrivateKey}")
     private String merchantPrivateKey;
 
-    @Value("${tbsg.pay.code}")
-    private String payCode;
-
     /**
      * 获取淘宝闪购平台公钥
      * SDK 使用此公钥验证淘宝闪购发来的请求签名
@@ -205,6 +204,7 @@ public class TbsgPayController extends BasePayService {
      * SDK 自动验证请求签名，自动为响应添加签名
      *
      * 生成符合淘宝闪购规范的账单 CSV 文件（18个字段）
+     * 账单尚未生成时提交异步生成任务并立即返回，不占用请求线程等待生成
      *
      * @param request 下载请求（SDK 已验证签名）
      * @return 下载响应（SDK 会自动添加 sign 和 nonceStr）
@@ -235,19 +235,27 @@ public class TbsgPayController extends BasePayService {
                 return response;
             }
 
-            // 3. 获取 OSS 预签名 URL
+            // 3. 获取 OSS 预签名 URL（优先走缓存）
             // 文件名格式：{payCode}_bill_{date}.csv，OSS 路径：bills/{payCode}_bill_{date}.csv
-            String fileName = payCode + "_bill_" + billDate + ".csv";
-            String objectName = "bills/" + fileName;
-
-            // 检查 OSS 文件是否存在，不存在则实时生成
-            if (!ossService.doesObjectExist(objectName)) {
-                log.warn("【下载账单-downloadBill】OSS 文件不存在，尝试实时生成，objectName: {}", objectName);
-                billService.generateAndUploadBill(billDate);
+            // 开启压缩时返回 bills/{payCode}_bill_{date}.csv.gz（Content-Encoding: gzip）
+            String billUrl = billService.findBillDownloadUrl(billDate);
+            if (billUrl == null) {
+                // OSS 文件不存在：提交异步生成任务后立即返回，平台收到 FAIL 后会重试，任务完成后即可拿到 URL
+                // 上一次生成失败时在返回信息中带上失败原因，同时重新提交生成
+                BillJob latestJob = billJobService.getLatestJob(billDate);
+                billJobService.submit(billDate, BillJobService.TRIGGER_DOWNLOAD);
+                response.setReturnCode(PaymentConstants.FAIL);
+                if (latestJob != null && BillJobStatus.FAILED.getCode().equals(latestJob.getStatus())) {
+                    log.warn("【下载账单-downloadBill】上次账单生成失败，已重新提交，billDate: {}, jobId: {}, errorMsg: {}",
+                            billDate, latestJob.getId(), latestJob.getErrorMsg());
+                    response.setReturnMsg("账单生成失败（" + latestJob.getErrorMsg() + "），已重新生成，请稍后重试");
+                    return response;
+                }
+                log.info("【下载账单-downloadBill】账单生成中，billDate: {}", billDate);
+                response.setReturnMsg("账单生成中，请稍后重试");
+                return response;
             }
 
-            String billUrl = ossService.getPresignedUrl(objectName);
-
             // 4. 构建响应
             response.setBillUrl(billUrl);
             response.setReturnCode(PaymentConstants.SUCCESS);
@@ -0,0 +1,34 @@
+package com.tbsg.h5.demo.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 账单导出检查点实体类
+ *
+ * @author demo
+ */
+@Data
+@TableName("bill_export_checkpoint")
+public class BillExportCheckpoint {
+
+    /**
+     * 检查点名称
+     */
+    @TableId(type = IdType.INPUT)
+    private String name;
+
+    /**
+     * 已导出的最大 bill_record.id
+     */
+    private Long lastId;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
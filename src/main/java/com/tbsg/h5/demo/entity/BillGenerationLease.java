@@ -0,0 +1,39 @@
+package com.tbsg.h5.demo.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 账单生成租约实体类
+ *
+ * @author demo
+ */
+@Data
+@TableName("bill_generation_lease")
+public class BillGenerationLease {
+
+    /**
+     * 账单日期（yyyy-MM-dd）
+     */
+    @TableId(type = IdType.INPUT)
+    private String billDate;
+
+    /**
+     * 持有租约的实例标识
+     */
+    private String owner;
+
+    /**
+     * 租约到期时间
+     */
+    private LocalDateTime leaseUntil;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+}
@@ -0,0 +1,74 @@
+package com.tbsg.h5.demo.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 账单生成任务实体类
+ *
+ * @author demo
+ */
+@Data
+@TableName("bill_job")
+public class BillJob {
+
+    /**
+     * 主键ID
+     */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 账单日期（yyyy-MM-dd）
+     */
+    private String billDate;
+
+    /**
+     * 触发来源：DOWNLOAD-下载接口, SCHEDULE-定时任务, CATCH_UP-补生成
+     */
+    private String triggerSource;
+
+    /**
+     * 任务状态：QUEUED-排队中, RUNNING-执行中, DONE-已完成, FAILED-失败
+     */
+    private String status;
+
+    /**
+     * 写入的账单行数
+     */
+    private Long rowCount;
+
+    /**
+     * 执行耗时（毫秒）
+     */
+    private Long durationMs;
+
+    /**
+     * 失败原因
+     */
+    private String errorMsg;
+
+    /**
+     * 开始执行时间
+     */
+    private LocalDateTime startTime;
+
+    /**
+     * 结束时间
+     */
+    private LocalDateTime finishTime;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
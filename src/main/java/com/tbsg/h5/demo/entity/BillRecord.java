@@ -5,6 +5,7 @@ import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
 import lombok.Data;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 /**
@@ -24,9 +25,9 @@ public class BillRecord {
     private Long id;
 
     /**
-     * 账单日期（yyyy-MM-dd）
+     * 账单日期
      */
-    private String billDate;
+    private LocalDate billDate;
 
     /**
      * 支付code
@@ -39,14 +40,14 @@ public class BillRecord {
     private String transType;
 
     /**
-     * 请求时间（yyyy-MM-dd HH:mm:ss）
+     * 请求时间（精确到秒）
      */
-    private String requestTime;
+    private LocalDateTime requestTime;
 
     /**
-     * 成功时间（yyyy-MM-dd HH:mm:ss）
+     * 成功时间（精确到秒）
      */
-    private String successTime;
+    private LocalDateTime successTime;
 
     /**
      * 商户流水号（支付传淘宝闪购支付流水号，退款传淘宝闪购退款流水号）
@@ -0,0 +1,61 @@
+package com.tbsg.h5.demo.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 账单增量分段实体类
+ *
+ * 每个分段对应 OSS 上的一个无表头 CSV 文件，包含同一账单日、同一交易类型的一批连续账单记录
+ *
+ * @author demo
+ */
+@Data
+@TableName("bill_segment")
+public class BillSegment {
+
+    /**
+     * 主键ID
+     */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 账单日期（yyyy-MM-dd）
+     */
+    private String billDate;
+
+    /**
+     * 交易类型：pay-支付, refund-退款
+     */
+    private String transType;
+
+    /**
+     * 分段内第一条 bill_record.id
+     */
+    private Long firstId;
+
+    /**
+     * 分段内最后一条 bill_record.id
+     */
+    private Long lastId;
+
+    /**
+     * 分段行数
+     */
+    private Integer rowCount;
+
+    /**
+     * OSS 对象名称
+     */
+    private String objectName;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+}
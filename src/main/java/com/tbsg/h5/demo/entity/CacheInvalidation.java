@@ -0,0 +1,39 @@
+package com.tbsg.h5.demo.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 缓存失效日志实体类
+ *
+ * @author demo
+ */
+@Data
+@TableName("cache_invalidation")
+public class CacheInvalidation {
+
+    /**
+     * 主键ID（轮询游标）
+     */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 缓存名称：paymentOrder, refundOrder
+     */
+    private String cacheName;
+
+    /**
+     * 缓存键（transactionId / refundNo）
+     */
+    private String cacheKey;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+}
@@ -0,0 +1,74 @@
+package com.tbsg.h5.demo.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 回调通知发件箱实体类
+ *
+ * @author demo
+ */
+@Data
+@TableName("notify_outbox")
+public class NotifyOutbox {
+
+    /**
+     * 主键ID
+     */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 通知类型：PAY-支付结果通知, REFUND-退款结果通知
+     */
+    private String notifyType;
+
+    /**
+     * 业务单号（支付通知为 transactionId，退款通知为 refundNo）
+     */
+    private String bizNo;
+
+    /**
+     * 淘宝闪购回调地址
+     */
+    private String notifyUrl;
+
+    /**
+     * 通知状态：PENDING-待发送, SUCCESS-已送达, DEAD-已放弃
+     */
+    private String status;
+
+    /**
+     * 已发送次数
+     */
+    private Integer attempts;
+
+    /**
+     * 下次发送时间
+     */
+    private LocalDateTime nextRetryTime;
+
+    /**
+     * 最近一次失败原因
+     */
+    private String lastError;
+
+    /**
+     * 送达时间
+     */
+    private LocalDateTime successTime;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
@@ -0,0 +1,44 @@
+package com.tbsg.h5.demo.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 订单归档索引实体类
+ *
+ * @author demo
+ */
+@Data
+@TableName("order_archive_index")
+public class OrderArchiveIndex {
+
+    /**
+     * 主键ID
+     */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 订单类型：pay-支付订单, refund-退款订单
+     */
+    private String orderType;
+
+    /**
+     * 业务单号（支付订单为 transactionId，退款订单为 refundNo）
+     */
+    private String bizNo;
+
+    /**
+     * 归档文件的 OSS 对象名称
+     */
+    private String objectName;
+
+    /**
+     * 归档时间
+     */
+    private LocalDateTime archiveTime;
+}
@@ -37,6 +37,11 @@ public class PaymentOrder {
      */
     private Integer payAmount;
 
+    /**
+     * 已退款金额（单位：分）
+     */
+    private Integer refundedAmount;
+
     /**
      * 订单主题
      */
@@ -0,0 +1,40 @@
+package com.tbsg.h5.demo.enums;
+
+import lombok.Getter;
+
+/**
+ * 账单生成任务状态枚举
+ *
+ * @author demo
+ */
+@Getter
+public enum BillJobStatus {
+
+    /**
+     * 排队中
+     */
+    QUEUED("QUEUED", "排队中"),
+
+    /**
+     * 执行中
+     */
+    RUNNING("RUNNING", "执行中"),
+
+    /**
+     * 已完成
+     */
+    DONE("DONE", "已完成"),
+
+    /**
+     * 失败
+     */
+    FAILED("FAILED", "失败");
+
+    private final String code;
+    private final String description;
+
+    BillJobStatus(String code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+}
@@ -0,0 +1,35 @@
+package com.tbsg.h5.demo.enums;
+
+import lombok.Getter;
+
+/**
+ * 回调发送结果枚举
+ *
+ * @author demo
+ */
+@Getter
+public enum CallbackResult {
+
+    /**
+     * 已送达
+     */
+    DELIVERED("DELIVERED", "已送达"),
+
+    /**
+     * 已发送但未送达（平台返回失败或请求异常），计入发送次数
+     */
+    FAILED("FAILED", "发送失败"),
+
+    /**
+     * 未发送（回调域名并发已满等本地背压），不计入发送次数
+     */
+    NOT_SENT("NOT_SENT", "未发送");
+
+    private final String code;
+    private final String description;
+
+    CallbackResult(String code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+}
@@ -0,0 +1,35 @@
+package com.tbsg.h5.demo.enums;
+
+import lombok.Getter;
+
+/**
+ * 回调通知状态枚举
+ *
+ * @author demo
+ */
+@Getter
+public enum NotifyStatus {
+
+    /**
+     * 待发送（含发送失败等待重试）
+     */
+    PENDING("PENDING", "待发送"),
+
+    /**
+     * 已送达
+     */
+    SUCCESS("SUCCESS", "已送达"),
+
+    /**
+     * 超过最大发送次数仍未送达，不再自动重试（死信）
+     */
+    DEAD("DEAD", "已放弃");
+
+    private final String code;
+    private final String description;
+
+    NotifyStatus(String code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+}
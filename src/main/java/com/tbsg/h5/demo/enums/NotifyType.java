@@ -0,0 +1,30 @@
+package com.tbsg.h5.demo.enums;
+
+import lombok.Getter;
+
+/**
+ * 回调通知类型枚举
+ *
+ * @author demo
+ */
+@Getter
+public enum NotifyType {
+
+    /**
+     * 支付结果通知（业务单号为 transactionId）
+     */
+    PAY("PAY", "支付结果通知"),
+
+    /**
+     * 退款结果通知（业务单号为 refundNo）
+     */
+    REFUND("REFUND", "退款结果通知");
+
+    private final String code;
+    private final String description;
+
+    NotifyType(String code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+}
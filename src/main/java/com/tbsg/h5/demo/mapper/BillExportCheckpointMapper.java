@@ -0,0 +1,49 @@
+package com.tbsg.h5.demo.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tbsg.h5.demo.entity.BillExportCheckpoint;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+/**
+ * 账单导出检查点 Mapper 接口
+ *
+ * @author demo
+ */
+@Mapper
+public interface BillExportCheckpointMapper extends BaseMapper<BillExportCheckpoint> {
+
+    /**
+     * 初始化检查点（不存在时）
+     *
+     * @param name 检查点名称
+     * @return 影响行数
+     */
+    @Insert("INSERT IGNORE INTO bill_export_checkpoint (name, last_id) VALUES (#{name}, 0)")
+    int insertIfAbsent(@Param("name") String name);
+
+    /**
+     * 查询检查点位置
+     *
+     * @param name 检查点名称
+     * @return 已导出的最大 bill_record.id，不存在返回 null
+     */
+    @Select("SELECT last_id FROM bill_export_checkpoint WHERE name = #{name}")
+    Long selectLastId(@Param("name") String name);
+
+    /**
+     * 推进检查点（比较并更新，检查点已被其他实例推进时返回 0）
+     *
+     * @param name         检查点名称
+     * @param expectLastId 读取时的检查点位置
+     * @param lastId       新的检查点位置
+     * @return 影响行数，1 表示推进成功
+     */
+    @Update("UPDATE bill_export_checkpoint SET last_id = #{lastId} WHERE name = #{name} AND last_id = #{expectLastId}")
+    int advance(@Param("name") String name,
+                @Param("expectLastId") long expectLastId,
+                @Param("lastId") long lastId);
+}
@@ -0,0 +1,68 @@
+package com.tbsg.h5.demo.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tbsg.h5.demo.entity.BillGenerationLease;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+/**
+ * 账单生成租约 Mapper 接口
+ *
+ * 租约到期时间统一使用数据库时间，避免多实例之间的时钟偏差
+ *
+ * @author demo
+ */
+@Mapper
+public interface BillGenerationLeaseMapper extends BaseMapper<BillGenerationLease> {
+
+    /**
+     * 尝试创建租约（租约不存在时）
+     *
+     * @param billDate     账单日期（yyyy-MM-dd）
+     * @param owner        实例标识
+     * @param leaseSeconds 租约时长（秒）
+     * @return 影响行数，1 表示获取成功
+     */
+    @Insert("INSERT IGNORE INTO bill_generation_lease (bill_date, owner, lease_until) " +
+            "VALUES (#{billDate}, #{owner}, DATE_ADD(NOW(), INTERVAL #{leaseSeconds} SECOND))")
+    int insertIfAbsent(@Param("billDate") String billDate,
+                       @Param("owner") String owner,
+                       @Param("leaseSeconds") long leaseSeconds);
+
+    /**
+     * 尝试接管已过期的租约
+     *
+     * @param billDate     账单日期（yyyy-MM-dd）
+     * @param owner        实例标识
+     * @param leaseSeconds 租约时长（秒）
+     * @return 影响行数，1 表示获取成功
+     */
+    @Update("UPDATE bill_generation_lease SET owner = #{owner}, lease_until = DATE_ADD(NOW(), INTERVAL #{leaseSeconds} SECOND) " +
+            "WHERE bill_date = #{billDate} AND lease_until < NOW()")
+    int takeOverExpired(@Param("billDate") String billDate,
+                        @Param("owner") String owner,
+                        @Param("leaseSeconds") long leaseSeconds);
+
+    /**
+     * 查询租约是否仍被持有（存在且未过期）
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @return 1 表示仍被持有，0 表示已释放或已过期
+     */
+    @Select("SELECT COUNT(*) FROM bill_generation_lease WHERE bill_date = #{billDate} AND lease_until >= NOW()")
+    int countActive(@Param("billDate") String billDate);
+
+    /**
+     * 释放租约（只能释放自己持有的租约）
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @param owner    实例标识
+     * @return 影响行数
+     */
+    @Delete("DELETE FROM bill_generation_lease WHERE bill_date = #{billDate} AND owner = #{owner}")
+    int release(@Param("billDate") String billDate, @Param("owner") String owner);
+}
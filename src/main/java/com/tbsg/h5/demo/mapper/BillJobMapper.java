@@ -0,0 +1,27 @@
+package com.tbsg.h5.demo.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tbsg.h5.demo.entity.BillJob;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * 账单生成任务 Mapper 接口
+ *
+ * @author demo
+ */
+@Mapper
+public interface BillJobMapper extends BaseMapper<BillJob> {
+
+    /**
+     * 查询指定账单日期最近一次的生成任务
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @return 最近一次任务，不存在返回 null
+     */
+    default BillJob selectLatestByBillDate(String billDate) {
+        return selectOne(new com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper<BillJob>()
+                .eq(BillJob::getBillDate, billDate)
+                .orderByDesc(BillJob::getId)
+                .last("LIMIT 1"));
+    }
+}
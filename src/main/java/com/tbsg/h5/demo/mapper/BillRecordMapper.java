@@ -2,8 +2,18 @@ package com.tbsg.h5.demo.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.tbsg.h5.demo.entity.BillRecord;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -14,6 +24,29 @@ import java.util.List;
 @Mapper
 public interface BillRecordMapper extends BaseMapper<BillRecord> {
 
+    /**
+     * 多行批量写入账单记录，已存在的记录（uk_transaction_id_trans_type）忽略
+     *
+     * 用于异步写入和对账补写，同一笔交易重复写入不会产生重复账单。
+     * create_time 不使用组装记录时的时间，由数据库默认值取写入时间：记录可能在队列中等待一段时间，
+     * 组装时间会早于实际写入，增量分段导出的延迟过滤（{@link #selectExportBatch}）依赖它不早于写入时间
+     *
+     * @param records 账单记录列表（不能为空）
+     * @return 实际写入的行数
+     */
+    @Insert("<script>" +
+            "INSERT IGNORE INTO bill_record (bill_date, pay_code, trans_type, request_time, success_time, transaction_id, " +
+            "out_transaction_id, trans_status, trans_amount, user_trans_real_amount, settle_amount, marketing_amount, " +
+            "marketing_type, marketing_fee, origin_transaction_id, rate, fee) VALUES " +
+            "<foreach collection='records' item='r' separator=','>" +
+            "(#{r.billDate}, #{r.payCode}, #{r.transType}, #{r.requestTime}, #{r.successTime}, #{r.transactionId}, " +
+            "#{r.outTransactionId}, #{r.transStatus}, #{r.transAmount}, #{r.userTransRealAmount}, #{r.settleAmount}, " +
+            "#{r.marketingAmount}, #{r.marketingType}, #{r.marketingFee}, #{r.originTransactionId}, #{r.rate}, " +
+            "#{r.fee})" +
+            "</foreach>" +
+            "</script>")
+    int insertIgnoreBatch(@Param("records") List<BillRecord> records);
+
     /**
      * 根据账单日期查询账单记录
      *
@@ -27,6 +60,92 @@ public interface BillRecordMapper extends BaseMapper<BillRecord> {
                 .orderByAsc(BillRecord::getCreateTime));
     }
 
+    /**
+     * 流式查询指定日期的账单记录
+     *
+     * 使用 MySQL 流式结果集（fetchSize = Integer.MIN_VALUE），逐行回调 handler，
+     * 不会把整天的账单一次性加载到内存中。排序规则与 {@link #selectByBillDate} 一致。
+     * 过滤和排序与 idx_bill_date_trans_type_create_time 索引一致，按索引顺序范围扫描，无需 filesort。
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @param handler  逐行处理回调
+     */
+    @Select("SELECT * FROM bill_record WHERE bill_date = #{billDate} ORDER BY trans_type ASC, create_time ASC")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(BillRecord.class)
+    void streamByBillDate(@Param("billDate") String billDate, ResultHandler<BillRecord> handler);
+
+    /**
+     * 按交易类型和创建时间区间流式查询账单记录（用于分片并行导出）
+     *
+     * 区间为左闭右开 [startTime, endTime)，为 null 时表示不限制该端，
+     * 保证首尾分片能覆盖跨零点写入的记录
+     *
+     * @param billDate  账单日期（yyyy-MM-dd）
+     * @param transType 交易类型：pay / refund
+     * @param startTime 创建时间下界（包含），可为 null
+     * @param endTime   创建时间上界（不包含），可为 null
+     * @param handler   逐行处理回调
+     */
+    @Select("<script>" +
+            "SELECT * FROM bill_record WHERE bill_date = #{billDate} AND trans_type = #{transType}" +
+            "<if test='startTime != null'> AND create_time &gt;= #{startTime}</if>" +
+            "<if test='endTime != null'> AND create_time &lt; #{endTime}</if>" +
+            " ORDER BY create_time ASC" +
+            "</script>")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(BillRecord.class)
+    void streamByBillDateRange(@Param("billDate") String billDate,
+                               @Param("transType") String transType,
+                               @Param("startTime") LocalDateTime startTime,
+                               @Param("endTime") LocalDateTime endTime,
+                               ResultHandler<BillRecord> handler);
+
+    /**
+     * 查询指定日期内全额支付和全额退款的配对记录
+     *
+     * 在数据库侧完成配对：退款记录通过 origin_transaction_id 关联同一账单日的支付记录，
+     * 且退款金额等于支付金额。结果只包含配对成功的记录，无需加载当天的支付记录。
+     * 返回的 BillRecord 中 transactionId 为退款流水号，originTransactionId 为支付流水号。
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @param handler  逐行处理回调
+     */
+    @Select("SELECT r.transaction_id, r.origin_transaction_id FROM bill_record r " +
+            "INNER JOIN bill_record p ON p.transaction_id = r.origin_transaction_id " +
+            "AND p.bill_date = r.bill_date AND p.trans_type = 'pay' AND p.trans_amount = r.trans_amount " +
+            "WHERE r.bill_date = #{billDate} AND r.trans_type = 'refund'")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(BillRecord.class)
+    void streamFullRefundPairsByBillDate(@Param("billDate") String billDate, ResultHandler<BillRecord> handler);
+
+    /**
+     * 按主键顺序查询检查点之后、已写入超过 lagSeconds 秒的账单记录（用于增量分段导出）
+     *
+     * 延迟 lagSeconds 秒导出，避免自增主键较小但事务尚未提交的记录被跳过。
+     * 异步批量写入的 create_time 是语句执行时间（自动提交，执行后立即提交）；同步写入的 create_time 在支付/退款事务内设置，
+     * lagSeconds 需大于这类事务的最长耗时
+     *
+     * @param afterId    检查点位置（不包含）
+     * @param lagSeconds 导出延迟（秒）
+     * @param limit      最大行数
+     * @return 账单记录列表
+     */
+    @Select("SELECT * FROM bill_record WHERE id > #{afterId} " +
+            "AND create_time < DATE_SUB(NOW(), INTERVAL #{lagSeconds} SECOND) ORDER BY id ASC LIMIT #{limit}")
+    List<BillRecord> selectExportBatch(@Param("afterId") long afterId,
+                                       @Param("lagSeconds") long lagSeconds,
+                                       @Param("limit") int limit);
+
+    /**
+     * 统计指定日期的账单记录数
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @return 记录数
+     */
+    @Select("SELECT COUNT(*) FROM bill_record WHERE bill_date = #{billDate}")
+    long countByBillDate(@Param("billDate") String billDate);
+
     /**
      * 根据交易ID查询账单记录
      *
@@ -37,4 +156,42 @@ public interface BillRecordMapper extends BaseMapper<BillRecord> {
         return selectOne(new com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper<BillRecord>()
                 .eq(BillRecord::getTransactionId, transactionId));
     }
+
+    /**
+     * 按分区顺序查询 bill_record 的分区名称，表未分区时返回空列表
+     *
+     * @return 分区名称列表
+     */
+    @Select("SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'bill_record' AND PARTITION_NAME IS NOT NULL " +
+            "ORDER BY PARTITION_ORDINAL_POSITION")
+    List<String> selectPartitionNames();
+
+    /**
+     * 查询最早的账单日期（用于首次拆分分区）
+     *
+     * @return 最早的账单日期，表为空时返回 null
+     */
+    @Select("SELECT MIN(bill_date) FROM bill_record")
+    LocalDate selectMinBillDate();
+
+    /**
+     * 把兜底分区 p_max 拆分为新的月分区和 p_max
+     *
+     * p_max 中没有数据时只修改表定义，不会复制数据。
+     * definitions 由分区维护服务按日期生成（如 PARTITION p202611 VALUES LESS THAN ('2026-12-01')），不能来自外部输入
+     *
+     * @param definitions 新分区定义，多个分区用逗号分隔，按日期升序
+     */
+    @Update("ALTER TABLE bill_record REORGANIZE PARTITION p_max INTO " +
+            "(${definitions}, PARTITION p_max VALUES LESS THAN (MAXVALUE))")
+    void reorganizeMaxPartition(@Param("definitions") String definitions);
+
+    /**
+     * 删除分区（连同分区内的全部账单记录），只修改表定义，不会逐行删除
+     *
+     * @param partitionName 分区名称（由分区维护服务生成，不能来自外部输入）
+     */
+    @Update("ALTER TABLE bill_record DROP PARTITION ${partitionName}")
+    void dropPartition(@Param("partitionName") String partitionName);
 }
@@ -0,0 +1,40 @@
+package com.tbsg.h5.demo.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tbsg.h5.demo.entity.BillSegment;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+/**
+ * 账单增量分段 Mapper 接口
+ *
+ * @author demo
+ */
+@Mapper
+public interface BillSegmentMapper extends BaseMapper<BillSegment> {
+
+    /**
+     * 查询指定日期的全部分段，按交易类型、记录顺序排列（与账单输出顺序一致）
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @return 分段列表
+     */
+    default List<BillSegment> selectByBillDate(String billDate) {
+        return selectList(new com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper<BillSegment>()
+                .eq(BillSegment::getBillDate, billDate)
+                .orderByAsc(BillSegment::getTransType)  // pay 在前，refund 在后
+                .orderByAsc(BillSegment::getFirstId));
+    }
+
+    /**
+     * 统计指定日期已导出到分段的账单行数
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @return 分段行数之和
+     */
+    @Select("SELECT COALESCE(SUM(row_count), 0) FROM bill_segment WHERE bill_date = #{billDate}")
+    long sumRowCountByBillDate(@Param("billDate") String billDate);
+}
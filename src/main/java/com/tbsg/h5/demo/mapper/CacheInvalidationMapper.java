@@ -0,0 +1,48 @@
+package com.tbsg.h5.demo.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tbsg.h5.demo.entity.CacheInvalidation;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 缓存失效日志 Mapper 接口
+ *
+ * @author demo
+ */
+@Mapper
+public interface CacheInvalidationMapper extends BaseMapper<CacheInvalidation> {
+
+    /**
+     * 按 ID 顺序查询游标之后的失效记录（走主键）
+     *
+     * @param afterId 游标（不包含）
+     * @param limit   最大条数
+     * @return 失效记录列表
+     */
+    @Select("SELECT id, cache_name, cache_key FROM cache_invalidation WHERE id > #{afterId} ORDER BY id LIMIT #{limit}")
+    List<CacheInvalidation> selectAfter(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * 查询当前最大 ID（实例启动时作为初始游标，启动前的变更与空缓存无关）
+     *
+     * @return 最大 ID，表为空返回 0
+     */
+    @Select("SELECT COALESCE(MAX(id), 0) FROM cache_invalidation")
+    long selectMaxId();
+
+    /**
+     * 删除指定时间之前的失效记录（走 idx_create_time 索引，分批删除避免大事务）
+     *
+     * @param before 创建时间上界（不包含）
+     * @param limit  单批最大条数
+     * @return 删除条数
+     */
+    @Delete("DELETE FROM cache_invalidation WHERE create_time < #{before} LIMIT #{limit}")
+    int deleteBefore(@Param("before") LocalDateTime before, @Param("limit") int limit);
+}
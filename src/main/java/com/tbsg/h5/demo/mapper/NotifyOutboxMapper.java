@@ -0,0 +1,124 @@
+package com.tbsg.h5.demo.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tbsg.h5.demo.entity.NotifyOutbox;
+import com.tbsg.h5.demo.enums.NotifyStatus;
+import org.apache.ibatis.annotations.Mapper;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 回调通知发件箱 Mapper 接口
+ *
+ * @author demo
+ */
+@Mapper
+public interface NotifyOutboxMapper extends BaseMapper<NotifyOutbox> {
+
+    /**
+     * 查询到期待发送的通知（走 idx_status_next_retry_time 索引）
+     *
+     * @param now   当前时间
+     * @param limit 最大条数
+     * @return 待发送通知列表
+     */
+    default List<NotifyOutbox> selectDue(LocalDateTime now, int limit) {
+        return selectList(new com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper<NotifyOutbox>()
+                .eq(NotifyOutbox::getStatus, NotifyStatus.PENDING.getCode())
+                .le(NotifyOutbox::getNextRetryTime, now)
+                .orderByAsc(NotifyOutbox::getNextRetryTime)
+                .last("LIMIT " + limit));
+    }
+
+    /**
+     * 认领一次发送：发送次数加一，并把下次发送时间推迟到租约到期
+     *
+     * 以发送次数做乐观锁，多个实例或线程同时发送同一通知时只有一个能认领成功；
+     * 认领后实例宕机，租约到期后通知会被重新发送
+     *
+     * @param id         通知ID
+     * @param attempts   查询时的发送次数
+     * @param leaseUntil 租约到期时间
+     * @param updateTime 更新时间
+     * @return 影响行数，0 表示已被认领或已送达
+     */
+    default int claim(Long id, int attempts, LocalDateTime leaseUntil, LocalDateTime updateTime) {
+        return update(null, new com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper<NotifyOutbox>()
+                .set(NotifyOutbox::getAttempts, attempts + 1)
+                .set(NotifyOutbox::getNextRetryTime, leaseUntil)
+                .set(NotifyOutbox::getUpdateTime, updateTime)
+                .eq(NotifyOutbox::getId, id)
+                .eq(NotifyOutbox::getStatus, NotifyStatus.PENDING.getCode())
+                .eq(NotifyOutbox::getAttempts, attempts));
+    }
+
+    /**
+     * 释放认领：回调因本地背压未发出时撤销发送次数加一，并在 nextRetryTime 重新发送
+     *
+     * @param id            通知ID
+     * @param attempts      认领后的发送次数
+     * @param nextRetryTime 下次发送时间
+     * @param updateTime    更新时间
+     * @return 影响行数
+     */
+    default int releaseClaim(Long id, int attempts, LocalDateTime nextRetryTime, LocalDateTime updateTime) {
+        return update(null, new com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper<NotifyOutbox>()
+                .set(NotifyOutbox::getAttempts, attempts - 1)
+                .set(NotifyOutbox::getNextRetryTime, nextRetryTime)
+                .set(NotifyOutbox::getUpdateTime, updateTime)
+                .eq(NotifyOutbox::getId, id)
+                .eq(NotifyOutbox::getStatus, NotifyStatus.PENDING.getCode())
+                .eq(NotifyOutbox::getAttempts, attempts));
+    }
+
+    /**
+     * 标记通知已送达
+     *
+     * @param id          通知ID
+     * @param successTime 送达时间
+     * @return 影响行数
+     */
+    default int markSuccess(Long id, LocalDateTime successTime) {
+        return update(null, new com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper<NotifyOutbox>()
+                .set(NotifyOutbox::getStatus, NotifyStatus.SUCCESS.getCode())
+                .set(NotifyOutbox::getSuccessTime, successTime)
+                .set(NotifyOutbox::getUpdateTime, successTime)
+                .eq(NotifyOutbox::getId, id));
+    }
+
+    /**
+     * 标记通知为死信（超过最大发送次数），不再自动重试
+     *
+     * @param id         通知ID
+     * @param lastError  失败原因
+     * @param updateTime 更新时间
+     * @return 影响行数
+     */
+    default int markDead(Long id, String lastError, LocalDateTime updateTime) {
+        return update(null, new com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper<NotifyOutbox>()
+                .set(NotifyOutbox::getStatus, NotifyStatus.DEAD.getCode())
+                .set(NotifyOutbox::getLastError, lastError)
+                .set(NotifyOutbox::getUpdateTime, updateTime)
+                .eq(NotifyOutbox::getId, id)
+                .eq(NotifyOutbox::getStatus, NotifyStatus.PENDING.getCode()));
+    }
+
+    /**
+     * 记录发送失败，等待下次重试
+     *
+     * @param id            通知ID
+     * @param nextRetryTime 下次发送时间
+     * @param lastError     失败原因
+     * @param updateTime    更新时间
+     * @return 影响行数
+     */
+    default int markRetry(Long id, LocalDateTime nextRetryTime, String lastError, LocalDateTime updateTime) {
+        return update(null, new com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper<NotifyOutbox>()
+                .set(NotifyOutbox::getNextRetryTime, nextRetryTime)
+                .set(NotifyOutbox::getLastError, lastError)
+                .set(NotifyOutbox::getUpdateTime, updateTime)
+                .eq(NotifyOutbox::getId, id)
+                .eq(NotifyOutbox::getStatus, NotifyStatus.PENDING.getCode()));
+    }
+}
@@ -0,0 +1,64 @@
+package com.tbsg.h5.demo.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tbsg.h5.demo.entity.OrderArchiveIndex;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.util.List;
+
+/**
+ * 订单归档索引 Mapper 接口
+ *
+ * @author demo
+ */
+@Mapper
+public interface OrderArchiveIndexMapper extends BaseMapper<OrderArchiveIndex> {
+
+    /**
+     * 多行批量写入归档索引，已存在的索引（uk_order_type_biz_no）更新为新的归档文件
+     *
+     * 上次归档后订单又有变更、未被删除时，下次归档会生成新的归档文件并覆盖索引
+     *
+     * @param indexes 归档索引列表（不能为空）
+     * @return 影响行数
+     */
+    @Insert("<script>" +
+            "INSERT INTO order_archive_index (order_type, biz_no, object_name, archive_time) VALUES " +
+            "<foreach collection='indexes' item='i' separator=','>" +
+            "(#{i.orderType}, #{i.bizNo}, #{i.objectName}, #{i.archiveTime})" +
+            "</foreach>" +
+            " ON DUPLICATE KEY UPDATE object_name = VALUES(object_name), archive_time = VALUES(archive_time)" +
+            "</script>")
+    int upsertBatch(@Param("indexes") List<OrderArchiveIndex> indexes);
+
+    /**
+     * 根据订单类型和业务单号查询归档索引（走 uk_order_type_biz_no 索引）
+     *
+     * @param orderType 订单类型：pay / refund
+     * @param bizNo     业务单号
+     * @return 归档索引，未归档返回 null
+     */
+    default OrderArchiveIndex selectByBizNo(String orderType, String bizNo) {
+        return selectOne(new com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper<OrderArchiveIndex>()
+                .eq(OrderArchiveIndex::getOrderType, orderType)
+                .eq(OrderArchiveIndex::getBizNo, bizNo));
+    }
+
+    /**
+     * 流式扫描指定类型的全部已归档业务单号（走 uk_order_type_biz_no 索引，用于构建布隆过滤器）
+     *
+     * @param orderType 订单类型：pay / refund
+     * @param handler   逐行处理回调
+     */
+    @Select("SELECT biz_no FROM order_archive_index WHERE order_type = #{orderType}")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(String.class)
+    void streamBizNosByOrderType(@Param("orderType") String orderType, ResultHandler<String> handler);
+}
@@ -3,9 +3,16 @@ package com.tbsg.h5.demo.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.tbsg.h5.demo.entity.PaymentOrder;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -27,6 +34,80 @@ public interface PaymentOrderMapper extends BaseMapper<PaymentOrder> {
                 .eq(PaymentOrder::getTransactionId, transactionId));
     }
 
+    /**
+     * 根据交易ID加共享锁读取订单（当前读）
+     *
+     * 插入遇到唯一键冲突后使用：事务快照可能早于对方事务提交，普通查询读不到对方插入的订单
+     *
+     * @param transactionId 交易ID
+     * @return 支付订单
+     */
+    @Select("SELECT * FROM payment_order WHERE transaction_id = #{transactionId} LOCK IN SHARE MODE")
+    PaymentOrder selectByTransactionIdForShare(@Param("transactionId") String transactionId);
+
+    /**
+     * 根据交易ID批量查询订单（走 uk_transaction_id 索引）
+     *
+     * @param transactionIds 交易ID集合
+     * @return 支付订单列表（不存在的交易ID不返回）
+     */
+    default List<PaymentOrder> selectByTransactionIds(Collection<String> transactionIds) {
+        return selectList(new com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper<PaymentOrder>()
+                .in(PaymentOrder::getTransactionId, transactionIds));
+    }
+
+    /**
+     * 条件更新订单状态（只更新状态相关的列）
+     *
+     * 状态判断和更新在一条 UPDATE 中完成，并发的关单和支付回调不会互相覆盖
+     *
+     * @param transactionId    交易ID
+     * @param payStatus        目标状态
+     * @param excludedStatuses 当前状态为其中之一时不更新
+     * @param successTime      支付成功时间，为 null 时不更新该列
+     * @param updateTime       更新时间
+     * @return 影响行数，0 表示订单不存在或当前状态不允许变更
+     */
+    default int updateStatusIfNotIn(String transactionId, String payStatus, Collection<String> excludedStatuses,
+                                    LocalDateTime successTime, LocalDateTime updateTime) {
+        return update(null, new com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper<PaymentOrder>()
+                .set(PaymentOrder::getPayStatus, payStatus)
+                .set(successTime != null, PaymentOrder::getSuccessTime, successTime)
+                .set(PaymentOrder::getUpdateTime, updateTime)
+                .eq(PaymentOrder::getTransactionId, transactionId)
+                .notIn(PaymentOrder::getPayStatus, excludedStatuses));
+    }
+
+    /**
+     * 条件累加已退款金额
+     *
+     * 剩余可退金额的校验和累加在一条 UPDATE 中完成，同一订单的并发退款由行锁串行化，累计退款不会超过支付金额
+     *
+     * @param transactionId 交易ID
+     * @param refundAmount  本次退款金额（单位：分）
+     * @param updateTime    更新时间
+     * @return 影响行数，0 表示订单不存在或剩余可退金额不足
+     */
+    @Update("UPDATE payment_order SET refunded_amount = refunded_amount + #{refundAmount}, update_time = #{updateTime} " +
+            "WHERE transaction_id = #{transactionId} AND refunded_amount + #{refundAmount} <= pay_amount")
+    int addRefundedAmount(@Param("transactionId") String transactionId, @Param("refundAmount") int refundAmount,
+                          @Param("updateTime") LocalDateTime updateTime);
+
+    /**
+     * 查询更新时间区间内已支付成功、但没有支付账单记录的订单（异步写入账单的对账补写）
+     *
+     * 支付成功时会更新 update_time，按 idx_update_time 索引扫描区间后关联 bill_record
+     *
+     * @param since 更新时间下界（包含）
+     * @param until 更新时间上界（不包含）
+     * @return 缺少账单记录的支付订单
+     */
+    @Select("SELECT p.* FROM payment_order p LEFT JOIN bill_record b " +
+            "ON b.transaction_id = p.transaction_id AND b.trans_type = 'pay' " +
+            "WHERE p.update_time >= #{since} AND p.update_time < #{until} AND p.pay_status = 'SUCCESS' AND b.id IS NULL")
+    List<PaymentOrder> selectSuccessWithoutBillRecord(@Param("since") LocalDateTime since,
+                                                      @Param("until") LocalDateTime until);
+
     /**
      * 根据日期范围查询订单
      *
@@ -40,4 +121,61 @@ public interface PaymentOrderMapper extends BaseMapper<PaymentOrder> {
                 .between(PaymentOrder::getCreateTime, startTime, endTime)
                 .orderByDesc(PaymentOrder::getCreateTime));
     }
+
+    /**
+     * 按成功时间区间流式查询支付成功的订单（走 idx_success_time 索引，用于直接从订单表生成账单）
+     *
+     * @param startTime 成功时间下界（包含）
+     * @param endTime   成功时间上界（不包含）
+     * @param handler   逐行处理回调
+     */
+    @Select("SELECT * FROM payment_order WHERE success_time >= #{startTime} AND success_time < #{endTime} " +
+            "AND pay_status = 'SUCCESS' ORDER BY success_time ASC")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(PaymentOrder.class)
+    void streamSuccessBySuccessTime(@Param("startTime") LocalDateTime startTime,
+                                    @Param("endTime") LocalDateTime endTime,
+                                    ResultHandler<PaymentOrder> handler);
+
+    /**
+     * 流式扫描全部交易ID（走 uk_transaction_id 索引，用于构建布隆过滤器）
+     *
+     * @param handler 逐行处理回调
+     */
+    @Select("SELECT transaction_id FROM payment_order")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(String.class)
+    void streamAllTransactionIds(ResultHandler<String> handler);
+
+    /**
+     * 按 (update_time, id) 顺序查询超过归档期限的终态订单（走 idx_update_time 索引，用于订单归档）
+     *
+     * 以上一批最后一条的 (update_time, id) 作为游标，未达到终态的旧订单不会被反复扫描
+     *
+     * @param before    更新时间上界（不包含）
+     * @param afterTime 游标：上一批最后一条的更新时间
+     * @param afterId   游标：上一批最后一条的主键
+     * @param limit     最大条数
+     * @return 支付订单列表
+     */
+    @Select("SELECT * FROM payment_order WHERE update_time < #{before} " +
+            "AND (update_time > #{afterTime} OR (update_time = #{afterTime} AND id > #{afterId})) " +
+            "AND pay_status IN ('SUCCESS', 'CLOSED', 'FAIL') ORDER BY update_time ASC, id ASC LIMIT #{limit}")
+    List<PaymentOrder> selectArchiveBatch(@Param("before") LocalDateTime before,
+                                          @Param("afterTime") LocalDateTime afterTime,
+                                          @Param("afterId") long afterId,
+                                          @Param("limit") int limit);
+
+    /**
+     * 删除已归档的订单，归档期间有变更的订单（更新时间不早于 before）保留
+     *
+     * @param ids    订单主键
+     * @param before 归档时使用的更新时间上界
+     * @return 删除的行数
+     */
+    default int deleteArchived(Collection<Long> ids, LocalDateTime before) {
+        return delete(new com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper<PaymentOrder>()
+                .in(PaymentOrder::getId, ids)
+                .lt(PaymentOrder::getUpdateTime, before));
+    }
 }
@@ -3,9 +3,15 @@ package com.tbsg.h5.demo.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.tbsg.h5.demo.entity.RefundOrder;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -27,6 +33,53 @@ public interface RefundOrderMapper extends BaseMapper<RefundOrder> {
                 .eq(RefundOrder::getRefundNo, refundNo));
     }
 
+    /**
+     * 根据退款流水号加共享锁读取退款订单（锁定读，读取最新已提交的版本）
+     *
+     * 用于插入触发唯一键冲突后读取并发请求创建的退款订单：同一事务中之前的普通读已建立可重复读快照，
+     * 快照读看不到对方事务提交的行
+     *
+     * @param refundNo 退款流水号
+     * @return 退款订单
+     */
+    @Select("SELECT * FROM refund_order WHERE refund_no = #{refundNo} LOCK IN SHARE MODE")
+    RefundOrder selectByRefundNoForShare(@Param("refundNo") String refundNo);
+
+    /**
+     * 根据退款流水号批量查询退款订单（走 uk_refund_no 索引）
+     *
+     * @param refundNos 退款流水号集合
+     * @return 退款订单列表（不存在的退款流水号不返回）
+     */
+    default List<RefundOrder> selectByRefundNos(Collection<String> refundNos) {
+        return selectList(new com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper<RefundOrder>()
+                .in(RefundOrder::getRefundNo, refundNos));
+    }
+
+    /**
+     * 根据原支付流水号批量查询退款订单（走 idx_transaction_id 索引，用于订单归档）
+     *
+     * @param transactionIds 原支付流水号集合
+     * @return 退款订单列表
+     */
+    default List<RefundOrder> selectByTransactionIds(Collection<String> transactionIds) {
+        return selectList(new com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper<RefundOrder>()
+                .in(RefundOrder::getTransactionId, transactionIds));
+    }
+
+    /**
+     * 删除已归档的退款订单，归档期间有变更的退款订单（更新时间不早于 before）保留
+     *
+     * @param ids    退款订单主键
+     * @param before 归档时使用的更新时间上界
+     * @return 删除的行数
+     */
+    default int deleteArchived(Collection<Long> ids, LocalDateTime before) {
+        return delete(new com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper<RefundOrder>()
+                .in(RefundOrder::getId, ids)
+                .lt(RefundOrder::getUpdateTime, before));
+    }
+
     /**
      * 根据原支付流水号查询退款订单列表
      *
@@ -52,4 +105,62 @@ public interface RefundOrderMapper extends BaseMapper<RefundOrder> {
                 .between(RefundOrder::getCreateTime, startTime, endTime)
                 .orderByDesc(RefundOrder::getCreateTime));
     }
+
+    /**
+     * 流式扫描全部退款流水号（走 uk_refund_no 索引，用于构建布隆过滤器）
+     *
+     * @param handler 逐行处理回调
+     */
+    @Select("SELECT refund_no FROM refund_order")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(String.class)
+    void streamAllRefundNos(ResultHandler<String> handler);
+
+    /**
+     * 查询更新时间区间内已退款成功、但没有退款账单记录的退款订单（异步写入账单的对账补写）
+     *
+     * @param since 更新时间下界（包含）
+     * @param until 更新时间上界（不包含）
+     * @return 缺少账单记录的退款订单
+     */
+    @Select("SELECT r.* FROM refund_order r LEFT JOIN bill_record b " +
+            "ON b.transaction_id = r.refund_no AND b.trans_type = 'refund' " +
+            "WHERE r.update_time >= #{since} AND r.update_time < #{until} AND r.refund_status = 'SUCCESS' AND b.id IS NULL")
+    List<RefundOrder> selectSuccessWithoutBillRecord(@Param("since") LocalDateTime since,
+                                                     @Param("until") LocalDateTime until);
+
+    /**
+     * 按成功时间区间流式查询退款成功的退款订单（走 idx_success_time 索引，用于直接从订单表生成账单）
+     *
+     * @param startTime 成功时间下界（包含）
+     * @param endTime   成功时间上界（不包含）
+     * @param handler   逐行处理回调
+     */
+    @Select("SELECT * FROM refund_order WHERE success_time >= #{startTime} AND success_time < #{endTime} " +
+            "AND refund_status = 'SUCCESS' ORDER BY success_time ASC")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(RefundOrder.class)
+    void streamSuccessBySuccessTime(@Param("startTime") LocalDateTime startTime,
+                                    @Param("endTime") LocalDateTime endTime,
+                                    ResultHandler<RefundOrder> handler);
+
+    /**
+     * 查询成功时间区间内全额支付和全额退款的配对（与 BillRecordMapper.streamFullRefundPairsByBillDate 规则一致）
+     *
+     * 退款和原支付订单都在区间（同一账单日）内成功，且退款金额等于支付金额。
+     * 返回的 RefundOrder 只包含 refundNo 和 transactionId（原支付流水号）
+     *
+     * @param startTime 成功时间下界（包含）
+     * @param endTime   成功时间上界（不包含）
+     * @param handler   逐行处理回调
+     */
+    @Select("SELECT r.refund_no, r.transaction_id FROM refund_order r " +
+            "INNER JOIN payment_order p ON p.transaction_id = r.transaction_id AND p.pay_status = 'SUCCESS' " +
+            "AND p.success_time >= #{startTime} AND p.success_time < #{endTime} AND p.pay_amount = r.refund_amount " +
+            "WHERE r.success_time >= #{startTime} AND r.success_time < #{endTime} AND r.refund_status = 'SUCCESS'")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(RefundOrder.class)
+    void streamFullRefundPairsBySuccessTime(@Param("startTime") LocalDateTime startTime,
+                                            @Param("endTime") LocalDateTime endTime,
+                                            ResultHandler<RefundOrder> handler);
 }
@@ -0,0 +1,170 @@
+package com.tbsg.h5.demo.service;
+
+import com.tbsg.h5.demo.entity.BillJob;
+import com.tbsg.h5.demo.enums.BillJobStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 账单补生成服务
+ *
+ * 扫描 T-30 可查询窗口内的账单日，一次列举 OSS 找出缺失的账单文件，
+ * 通过 BillJobService 提交到有界的 billJobExecutor 并发补生成。
+ * 单日失败时按指数退避重试，超过最大次数后放弃，等待下一轮补生成。
+ *
+ * @author demo
+ */
+@Slf4j
+@Service
+public class BillCatchUpService {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    @Autowired
+    private BillService billService;
+
+    @Autowired
+    private BillJobService billJobService;
+
+    @Autowired
+    private OssService ossService;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    /**
+     * 单日最大尝试次数（含首次）
+     */
+    @Value("${tbsg.bill.catch-up.max-attempts:3}")
+    private int maxAttempts;
+
+    /**
+     * 首次重试的退避时间（毫秒），之后每次翻倍
+     */
+    @Value("${tbsg.bill.catch-up.backoff-millis:60000}")
+    private long backoffMillis;
+
+    /**
+     * 上一轮补生成尚未结束时不再发起新一轮
+     */
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * 补生成 T-30 窗口内缺失的账单（不含当天）
+     *
+     * 只负责提交任务，不等待任务完成；进度和吞吐在每个账单日结束时输出
+     *
+     * @return 本轮需要补生成的账单日数量，上一轮未结束时返回 -1
+     */
+    public int catchUp() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("【账单补生成】上一轮补生成尚未结束，跳过本轮");
+            return -1;
+        }
+
+        List<String> missingDates;
+        try {
+            missingDates = findMissingBillDates();
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+        if (missingDates.isEmpty()) {
+            log.info("【账单补生成】T-{} 窗口内账单均已生成", BillService.BILL_QUERY_DAYS);
+            running.set(false);
+            return 0;
+        }
+
+        log.info("【账单补生成】发现 {} 个缺失的账单日，开始补生成: {}", missingDates.size(), missingDates);
+        CatchUpRun run = new CatchUpRun(missingDates.size());
+        for (String billDate : missingDates) {
+            submitAttempt(run, billDate, 1);
+        }
+        return missingDates.size();
+    }
+
+    /**
+     * 列举 OSS 中已存在的账单文件，找出窗口内缺失的账单日
+     */
+    private List<String> findMissingBillDates() {
+        Set<String> existingObjects = ossService.listObjectNames(billService.getBillObjectPrefix());
+        LocalDate today = LocalDate.now();
+        List<String> missingDates = new ArrayList<>();
+        for (int i = BillService.BILL_QUERY_DAYS; i >= 1; i--) {
+            String billDate = today.minusDays(i).format(DATE_FORMATTER);
+            if (!existingObjects.contains(billService.getBillObjectName(billDate))) {
+                missingDates.add(billDate);
+            }
+        }
+        return missingDates;
+    }
+
+    private void submitAttempt(CatchUpRun run, String billDate, int attempt) {
+        CompletableFuture<BillJob> future;
+        try {
+            future = billJobService.submit(billDate, BillJobService.TRIGGER_CATCH_UP);
+        } catch (RuntimeException e) {
+            onAttemptFinished(run, billDate, attempt, null, e);
+            return;
+        }
+        future.whenComplete((job, e) -> onAttemptFinished(run, billDate, attempt, job, e));
+    }
+
+    private void onAttemptFinished(CatchUpRun run, String billDate, int attempt, BillJob job, Throwable error) {
+        boolean succeeded = error == null && job != null && BillJobStatus.DONE.getCode().equals(job.getStatus());
+        if (succeeded) {
+            run.succeeded.incrementAndGet();
+            if (job.getRowCount() != null) {
+                run.rows.addAndGet(job.getRowCount());
+            }
+        } else if (attempt < maxAttempts) {
+            long delayMillis = backoffMillis << (attempt - 1);
+            log.warn("【账单补生成】第 {} 次生成失败，{} ms 后重试，billDate: {}, 原因: {}", attempt, delayMillis, billDate,
+                    error != null ? error.getMessage() : job != null ? job.getErrorMsg() : null);
+            taskScheduler.schedule(() -> submitAttempt(run, billDate, attempt + 1),
+                    Instant.now().plusMillis(delayMillis));
+            return;
+        } else {
+            run.failed.incrementAndGet();
+            log.error("【账单补生成】重试 {} 次后仍失败，放弃，billDate: {}", attempt, billDate);
+        }
+
+        int finished = run.succeeded.get() + run.failed.get();
+        long elapsedMillis = Math.max(1, System.currentTimeMillis() - run.startMillis);
+        log.info("【账单补生成】进度 {}/{}，成功: {}, 失败: {}, 行数: {}, 耗时: {} ms, 吞吐: {} 天/分钟, {} 行/秒",
+                finished, run.total, run.succeeded.get(), run.failed.get(), run.rows.get(), elapsedMillis,
+                String.format("%.2f", finished * 60000.0 / elapsedMillis), run.rows.get() * 1000 / elapsedMillis);
+        if (finished == run.total) {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 一轮补生成的统计
+     */
+    private static class CatchUpRun {
+        private final int total;
+        private final long startMillis = System.currentTimeMillis();
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicLong rows = new AtomicLong();
+
+        CatchUpRun(int total) {
+            this.total = total;
+        }
+    }
+}
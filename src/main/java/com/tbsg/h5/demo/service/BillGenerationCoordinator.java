@@ -0,0 +1,129 @@
+package com.tbsg.h5.demo.service;
+
+import com.tbsg.h5.demo.mapper.BillGenerationLeaseMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 账单生成协调器
+ *
+ * 保证同一账单日同一时间只有一次生成在进行：
+ * 1. 实例内：同一账单日的并发调用合并为一次（single-flight），其余调用等待并共享结果
+ * 2. 实例间：通过 bill_generation_lease 表的租约互斥，未获得租约的实例等待租约释放，
+ *    若对方已生成成功则直接返回，否则重新竞争租约
+ *
+ * @author demo
+ */
+@Slf4j
+@Service
+public class BillGenerationCoordinator {
+
+    @Autowired
+    private BillGenerationLeaseMapper billGenerationLeaseMapper;
+
+    /**
+     * 租约时长（秒），需大于单次账单生成的最长耗时
+     */
+    @Value("${tbsg.bill.lease.seconds:1800}")
+    private long leaseSeconds;
+
+    /**
+     * 等待其他实例释放租约时的轮询间隔（毫秒）
+     */
+    @Value("${tbsg.bill.lease.poll-interval-millis:1000}")
+    private long pollIntervalMillis;
+
+    /**
+     * 当前实例标识：pid@hostname + 随机后缀
+     */
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName()
+            + ":" + UUID.randomUUID().toString().substring(0, 8);
+
+    private final ConcurrentMap<String, CompletableFuture<Long>> inFlightGenerations = new ConcurrentHashMap<>();
+
+    /**
+     * 互斥执行账单生成
+     *
+     * @param billDate           账单日期（yyyy-MM-dd）
+     * @param generation         生成逻辑，返回写入的账单行数
+     * @param completedElsewhere 其他实例释放租约后，判断账单是否已由对方生成完成
+     * @return 写入的账单行数；账单由其他实例生成时返回 null
+     */
+    public Long runExclusively(String billDate, Supplier<Long> generation, BooleanSupplier completedElsewhere) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        CompletableFuture<Long> existing = inFlightGenerations.putIfAbsent(billDate, future);
+        if (existing != null) {
+            log.info("【账单生成】本实例已有相同账单日的生成任务，等待其结果，billDate: {}", billDate);
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        try {
+            Long result = runWithLease(billDate, generation, completedElsewhere);
+            future.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightGenerations.remove(billDate, future);
+        }
+    }
+
+    private Long runWithLease(String billDate, Supplier<Long> generation, BooleanSupplier completedElsewhere) {
+        long deadline = System.currentTimeMillis() + leaseSeconds * 1000;
+        while (true) {
+            if (tryAcquire(billDate)) {
+                log.info("【账单生成】获取生成租约成功，billDate: {}, owner: {}", billDate, owner);
+                try {
+                    return generation.get();
+                } finally {
+                    billGenerationLeaseMapper.release(billDate, owner);
+                }
+            }
+
+            // 其他实例正在生成，等待其释放租约
+            log.info("【账单生成】其他实例正在生成账单，等待租约释放，billDate: {}", billDate);
+            while (billGenerationLeaseMapper.countActive(billDate) > 0) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("等待账单生成超时，billDate: " + billDate);
+                }
+                sleep(pollIntervalMillis);
+            }
+            if (completedElsewhere.getAsBoolean()) {
+                log.info("【账单生成】账单已由其他实例生成完成，billDate: {}", billDate);
+                return null;
+            }
+            // 对方生成失败或租约过期，重新竞争
+            log.warn("【账单生成】其他实例未完成账单生成，重新竞争租约，billDate: {}", billDate);
+        }
+    }
+
+    private boolean tryAcquire(String billDate) {
+        return billGenerationLeaseMapper.insertIfAbsent(billDate, owner, leaseSeconds) > 0
+                || billGenerationLeaseMapper.takeOverExpired(billDate, owner, leaseSeconds) > 0;
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待账单生成被中断", e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.tbsg.h5.demo.service;
+
+import com.tbsg.h5.demo.entity.BillJob;
+import com.tbsg.h5.demo.enums.BillJobStatus;
+import com.tbsg.h5.demo.mapper.BillJobMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 账单生成任务服务
+ *
+ * 账单生成统一通过此服务排队，在独立线程池 billJobExecutor 上异步执行，
+ * 任务状态（排队中/执行中/已完成/失败）、行数和耗时持久化到 bill_job 表。
+ * 同一账单日在本实例内同时只会有一个排队或执行中的任务，重复提交直接返回已有任务。
+ *
+ * @author demo
+ */
+@Slf4j
+@Service
+public class BillJobService {
+
+    /**
+     * 触发来源：下载账单接口
+     */
+    public static final String TRIGGER_DOWNLOAD = "DOWNLOAD";
+
+    /**
+     * 触发来源：定时任务
+     */
+    public static final String TRIGGER_SCHEDULE = "SCHEDULE";
+
+    /**
+     * 触发来源：补生成任务
+     */
+    public static final String TRIGGER_CATCH_UP = "CATCH_UP";
+
+    @Autowired
+    private BillJobMapper billJobMapper;
+
+    @Autowired
+    private BillService billService;
+
+    @Autowired
+    private ThreadPoolTaskExecutor billJobExecutor;
+
+    /**
+     * 本实例中排队或执行中的任务：billDate -> 任务完成结果
+     */
+    private final ConcurrentMap<String, CompletableFuture<BillJob>> activeJobs = new ConcurrentHashMap<>();
+
+    /**
+     * 提交账单生成任务
+     *
+     * @param billDate      账单日期（yyyy-MM-dd）
+     * @param triggerSource 触发来源
+     * @return 任务结束（完成或失败）时完成的 Future
+     */
+    public CompletableFuture<BillJob> submit(String billDate, String triggerSource) {
+        CompletableFuture<BillJob> result = new CompletableFuture<>();
+        CompletableFuture<BillJob> existing = activeJobs.putIfAbsent(billDate, result);
+        if (existing != null) {
+            log.info("【账单任务】已有排队或执行中的任务，billDate: {}, triggerSource: {}", billDate, triggerSource);
+            return existing;
+        }
+
+        BillJob job = new BillJob();
+        job.setBillDate(billDate);
+        job.setTriggerSource(triggerSource);
+        job.setStatus(BillJobStatus.QUEUED.getCode());
+        job.setCreateTime(LocalDateTime.now());
+        job.setUpdateTime(LocalDateTime.now());
+        try {
+            billJobMapper.insert(job);
+            billJobExecutor.execute(() -> runJob(job, result));
+        } catch (TaskRejectedException e) {
+            log.error("【账单任务】任务队列已满，billDate: {}", billDate);
+            finishJob(job, BillJobStatus.FAILED, null, "任务队列已满", result);
+            throw new IllegalStateException("账单生成任务队列已满，请稍后重试", e);
+        } catch (RuntimeException e) {
+            activeJobs.remove(billDate, result);
+            result.completeExceptionally(e);
+            throw e;
+        }
+
+        log.info("【账单任务】任务已提交，jobId: {}, billDate: {}, triggerSource: {}", job.getId(), billDate, triggerSource);
+        return result;
+    }
+
+    /**
+     * 查询指定账单日期最近一次的生成任务
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @return 最近一次任务，不存在返回 null
+     */
+    public BillJob getLatestJob(String billDate) {
+        return billJobMapper.selectLatestByBillDate(billDate);
+    }
+
+    private void runJob(BillJob job, CompletableFuture<BillJob> result) {
+        // 更新为执行中失败时同样要结束任务，否则该账单日会一直占用 activeJobs
+        try {
+            job.setStatus(BillJobStatus.RUNNING.getCode());
+            job.setStartTime(LocalDateTime.now());
+            job.setUpdateTime(LocalDateTime.now());
+            billJobMapper.updateById(job);
+            log.info("【账单任务】开始执行，jobId: {}, billDate: {}", job.getId(), job.getBillDate());
+
+            Long rowCount = billService.generateAndUploadBill(job.getBillDate());
+            finishJob(job, BillJobStatus.DONE, rowCount, null, result);
+        } catch (Exception e) {
+            log.error("【账单任务】执行失败，jobId: {}, billDate: {}", job.getId(), job.getBillDate(), e);
+            finishJob(job, BillJobStatus.FAILED, null, e.getMessage(), result);
+        }
+    }
+
+    private void finishJob(BillJob job, BillJobStatus status, Long rowCount, String errorMsg,
+                           CompletableFuture<BillJob> result) {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            job.setStatus(status.getCode());
+            job.setRowCount(rowCount);
+            job.setErrorMsg(StringUtils.abbreviate(errorMsg, 512));
+            job.setFinishTime(now);
+            if (job.getStartTime() != null) {
+                job.setDurationMs(java.time.Duration.between(job.getStartTime(), now).toMillis());
+            }
+            job.setUpdateTime(now);
+            billJobMapper.updateById(job);
+            log.info("【账单任务】任务结束，jobId: {}, billDate: {}, status: {}, rowCount: {}, durationMs: {}",
+                    job.getId(), job.getBillDate(), job.getStatus(), job.getRowCount(), job.getDurationMs());
+        } catch (Exception e) {
+            log.error("【账单任务】更新任务状态失败，jobId: {}", job.getId(), e);
+        } finally {
+            activeJobs.remove(job.getBillDate(), result);
+            result.complete(job);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.tbsg.h5.demo.service;
+
+import com.tbsg.h5.demo.entity.BillRecord;
+import com.tbsg.h5.demo.entity.PaymentOrder;
+import com.tbsg.h5.demo.entity.RefundOrder;
+import com.tbsg.h5.demo.enums.TransType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * 账单记录组装器
+ *
+ * 支付订单、退款订单到账单记录（17 个 CSV 字段）的唯一转换入口，
+ * 写入 bill_record 和直接从订单表生成账单时共用，保证两种账单来源输出一致
+ *
+ * @author demo
+ */
+@Component
+public class BillRecordAssembler {
+
+    @Value("${tbsg.pay.code}")
+    private String payCode;
+
+    /**
+     * 支付成功的订单转换为支付账单记录
+     *
+     * @param order 支付成功的订单
+     * @return 账单记录
+     */
+    public BillRecord buildPayRecord(PaymentOrder order) {
+        BillRecord billRecord = new BillRecord();
+        billRecord.setBillDate(order.getSuccessTime().toLocalDate());
+        billRecord.setPayCode(payCode);
+        billRecord.setTransType(TransType.PAY.getCode());
+        billRecord.setRequestTime(truncateToSeconds(order.getRequestTime()));
+        billRecord.setSuccessTime(truncateToSeconds(order.getSuccessTime()));
+        billRecord.setTransactionId(order.getTransactionId());
+        billRecord.setOutTransactionId(order.getOutTradeNo());
+        billRecord.setTransStatus("S");
+        billRecord.setTransAmount(order.getPayAmount());
+        billRecord.setUserTransRealAmount(order.getPayAmount());
+        billRecord.setSettleAmount(0);
+        billRecord.setMarketingAmount(0);
+        billRecord.setMarketingType("");
+        billRecord.setMarketingFee(0);
+        billRecord.setOriginTransactionId("");
+        billRecord.setRate(0);
+        billRecord.setFee(0);
+        billRecord.setCreateTime(LocalDateTime.now());
+        return billRecord;
+    }
+
+    /**
+     * 退款成功的退款订单转换为退款账单记录
+     *
+     * @param refundOrder 退款成功的退款订单
+     * @return 账单记录
+     */
+    public BillRecord buildRefundRecord(RefundOrder refundOrder) {
+        BillRecord billRecord = new BillRecord();
+        billRecord.setBillDate(refundOrder.getSuccessTime().toLocalDate());
+        billRecord.setPayCode(payCode);
+        billRecord.setTransType(TransType.REFUND.getCode());
+        billRecord.setRequestTime(truncateToSeconds(refundOrder.getRequestTime()));
+        billRecord.setSuccessTime(truncateToSeconds(refundOrder.getSuccessTime()));
+        billRecord.setTransactionId(refundOrder.getRefundNo());
+        billRecord.setOutTransactionId(refundOrder.getOutRefundNo());
+        billRecord.setTransStatus("S");
+        billRecord.setTransAmount(refundOrder.getRefundAmount());
+        billRecord.setUserTransRealAmount(refundOrder.getRefundAmount());
+        billRecord.setSettleAmount(0);
+        billRecord.setMarketingAmount(0);
+        billRecord.setMarketingType("");
+        billRecord.setMarketingFee(0);
+        // 退款订单的 transactionId 即原支付流水号
+        billRecord.setOriginTransactionId(refundOrder.getTransactionId());
+        billRecord.setRate(0);
+        billRecord.setFee(0);
+        billRecord.setCreateTime(LocalDateTime.now());
+        return billRecord;
+    }
+
+    /**
+     * 截断到秒：DATETIME 列写入时会对毫秒四舍五入，截断后两种账单来源输出的时间一致
+     */
+    private static LocalDateTime truncateToSeconds(LocalDateTime time) {
+        return time == null ? null : time.truncatedTo(ChronoUnit.SECONDS);
+    }
+}
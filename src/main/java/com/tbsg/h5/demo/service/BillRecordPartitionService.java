@@ -0,0 +1,160 @@
+package com.tbsg.h5.demo.service;
+
+import com.tbsg.h5.demo.mapper.BillRecordMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.regex.Pattern;
+
+/**
+ * 账单记录分区维护服务
+ *
+ * bill_record 按 bill_date 做月分区（p{yyyyMM}），另有兜底分区 p_max：
+ * 1. 预建分区：保证当月及之后 premake-months 个月都有独立分区，新分区从 p_max 中拆出，
+ *    p_max 为空时只修改表定义，不复制数据
+ * 2. 过期分区：retention-months 大于 0 时，删除当月之前超过 retention-months 个月的分区，
+ *    DROP PARTITION 只修改表定义，不会产生大事务的逐行删除
+ *
+ * 按天导出账单时 bill_date 条件只命中一个分区，扫描范围和索引深度不随历史数据增长。
+ * 表未分区（已有数据库未执行升级脚本）时跳过。多实例同时维护时后执行的 DDL 可能失败，下次执行时重新读取分区即可
+ *
+ * @author demo
+ */
+@Slf4j
+@Service
+public class BillRecordPartitionService {
+
+    /**
+     * 兜底分区名称
+     */
+    public static final String MAX_PARTITION = "p_max";
+
+    private static final Pattern MONTH_PARTITION_PATTERN = Pattern.compile("p\\d{6}");
+
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyyMM");
+
+    /**
+     * 最少保留的月数：保留当月和之前 2 个月，覆盖账单补生成的 T-30 窗口
+     */
+    private static final int MIN_RETENTION_MONTHS = 2;
+
+    @Autowired
+    private BillRecordMapper billRecordMapper;
+
+    @Value("${tbsg.bill.partition.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 提前创建的月分区数（不含当月）
+     */
+    @Value("${tbsg.bill.partition.premake-months:2}")
+    private int premakeMonths;
+
+    /**
+     * 保留当月之前的月数，0 表示不删除历史分区
+     */
+    @Value("${tbsg.bill.partition.retention-months:0}")
+    private int retentionMonths;
+
+    @PostConstruct
+    public void init() {
+        if (retentionMonths > 0 && retentionMonths < MIN_RETENTION_MONTHS) {
+            log.warn("【账单分区】retention-months: {} 小于账单补生成窗口，按 {} 个月保留", retentionMonths, MIN_RETENTION_MONTHS);
+            retentionMonths = MIN_RETENTION_MONTHS;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 预建未来的月分区，并删除超过保留期的月分区
+     */
+    public synchronized void rotate() {
+        List<String> partitionNames = billRecordMapper.selectPartitionNames();
+        if (partitionNames.isEmpty()) {
+            log.info("【账单分区】bill_record 未分区，跳过分区维护");
+            return;
+        }
+        if (!partitionNames.contains(MAX_PARTITION)) {
+            log.warn("【账单分区】bill_record 缺少兜底分区 {}，跳过分区维护，partitions: {}", MAX_PARTITION, partitionNames);
+            return;
+        }
+
+        List<YearMonth> months = new ArrayList<>();
+        for (String partitionName : partitionNames) {
+            if (MONTH_PARTITION_PATTERN.matcher(partitionName).matches()) {
+                months.add(YearMonth.parse(partitionName.substring(1), MONTH_FORMATTER));
+            }
+        }
+        createPartitions(months);
+        dropExpiredPartitions(months);
+    }
+
+    /**
+     * 从 p_max 中拆出最后一个月分区之后、直到 premake-months 个月之后的分区
+     *
+     * 首次拆分时从最早的账单月份开始，已有数据按月落到各自的分区
+     */
+    private void createPartitions(List<YearMonth> months) {
+        YearMonth current = YearMonth.now();
+        YearMonth until = current.plusMonths(premakeMonths);
+        YearMonth from;
+        if (months.isEmpty()) {
+            LocalDate minBillDate = billRecordMapper.selectMinBillDate();
+            from = minBillDate == null ? current : min(YearMonth.from(minBillDate), current);
+        } else {
+            from = months.get(months.size() - 1).plusMonths(1);
+        }
+        if (from.isAfter(until)) {
+            return;
+        }
+
+        StringJoiner definitions = new StringJoiner(", ");
+        List<String> created = new ArrayList<>();
+        for (YearMonth month = from; !month.isAfter(until); month = month.plusMonths(1)) {
+            String partitionName = partitionName(month);
+            definitions.add("PARTITION " + partitionName + " VALUES LESS THAN ('" + month.plusMonths(1).atDay(1) + "')");
+            created.add(partitionName);
+        }
+        long startMillis = System.currentTimeMillis();
+        billRecordMapper.reorganizeMaxPartition(definitions.toString());
+        log.info("【账单分区】创建月分区完成，partitions: {}, 耗时: {} ms", created, System.currentTimeMillis() - startMillis);
+    }
+
+    /**
+     * 删除早于保留期的月分区
+     */
+    private void dropExpiredPartitions(List<YearMonth> months) {
+        if (retentionMonths <= 0) {
+            return;
+        }
+        YearMonth oldestRetained = YearMonth.now().minusMonths(retentionMonths);
+        for (YearMonth month : months) {
+            if (!month.isBefore(oldestRetained)) {
+                continue;
+            }
+            String partitionName = partitionName(month);
+            billRecordMapper.dropPartition(partitionName);
+            log.info("【账单分区】删除过期分区完成，partition: {}, retentionMonths: {}", partitionName, retentionMonths);
+        }
+    }
+
+    private static String partitionName(YearMonth month) {
+        return "p" + month.format(MONTH_FORMATTER);
+    }
+
+    private static YearMonth min(YearMonth a, YearMonth b) {
+        return a.isBefore(b) ? a : b;
+    }
+}
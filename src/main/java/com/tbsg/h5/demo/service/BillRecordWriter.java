@@ -0,0 +1,293 @@
+package com.tbsg.h5.demo.service;
+
+import com.tbsg.h5.demo.entity.BillRecord;
+import com.tbsg.h5.demo.entity.PaymentOrder;
+import com.tbsg.h5.demo.entity.RefundOrder;
+import com.tbsg.h5.demo.mapper.BillRecordMapper;
+import com.tbsg.h5.demo.mapper.PaymentOrderMapper;
+import com.tbsg.h5.demo.mapper.RefundOrderMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 账单记录写入服务
+ *
+ * 支付成功、退款成功时把订单转换为账单记录，支持两种写入模式（tbsg.bill.record.write-mode）：
+ * 1. sync（默认）：在订单事务中直接写入 bill_record
+ * 2. write-behind：订单事务提交后放入内存队列，billRecordFlushScheduler 每 flush-interval-millis 或攒够 batch-size 条
+ *    用一条多行 INSERT IGNORE 批量写入（攒够时只提交一次刷盘，刷盘开始前不重复提交），支付回调和退款的事务不再包含 bill_record 的写入和索引维护。
+ *    节点在刷盘前宕机或队列已满时，定时对账扫描最近 reconcile-lookback-minutes 内成功的订单，
+ *    补写缺失的账单记录；bill_record 的 (transaction_id, trans_type) 唯一索引保证重复写入不会产生重复账单
+ *
+ * 账单来源为订单表（tbsg.bill.source=orders）时账单直接从订单表生成，不再写入 bill_record
+ *
+ * 指标：bill.record.queue.size-待写入条数，bill.record.flush-批量写入耗时，bill.record.flush.size-批次大小，
+ * bill.record.dropped-队列已满未入队的条数，bill.record.reconciled-对账补写的条数
+ *
+ * @author demo
+ */
+@Slf4j
+@Service
+public class BillRecordWriter {
+
+    /**
+     * 同步写入模式
+     */
+    public static final String MODE_SYNC = "sync";
+
+    /**
+     * 异步批量写入模式
+     */
+    public static final String MODE_WRITE_BEHIND = "write-behind";
+
+    @Autowired
+    private BillRecordMapper billRecordMapper;
+
+    @Autowired
+    private PaymentOrderMapper paymentOrderMapper;
+
+    @Autowired
+    private RefundOrderMapper refundOrderMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private BillRecordAssembler billRecordAssembler;
+
+    @Autowired
+    private ThreadPoolTaskScheduler billRecordFlushScheduler;
+
+    @Value("${tbsg.bill.record.write-mode:sync}")
+    private String writeMode;
+
+    @Value("${tbsg.bill.source:bill-record}")
+    private String billSource;
+
+    @Value("${tbsg.bill.record.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${tbsg.bill.record.batch-size:500}")
+    private int batchSize;
+
+    @Value("${tbsg.bill.record.flush-interval-millis:200}")
+    private long flushIntervalMillis;
+
+    /**
+     * 对账回看时长（分钟），需覆盖节点宕机到恢复的最长时间
+     */
+    @Value("${tbsg.bill.record.reconcile-lookback-minutes:60}")
+    private long reconcileLookbackMinutes;
+
+    /**
+     * 对账延迟（秒），最近这段时间内成功的订单可能还在队列中，不参与对账
+     */
+    @Value("${tbsg.bill.record.reconcile-lag-seconds:60}")
+    private long reconcileLagSeconds;
+
+    private BlockingQueue<BillRecord> queue;
+
+    private ScheduledFuture<?> periodicFlush;
+
+    /**
+     * 是否已提交一次攒够批次触发的刷盘且尚未开始执行
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private Timer flushTimer;
+
+    private DistributionSummary flushSize;
+
+    private Counter dropped;
+
+    private Counter reconciled;
+
+    @PostConstruct
+    public void init() {
+        if (!isEnabled() || !isWriteBehind()) {
+            return;
+        }
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        flushTimer = Timer.builder("bill.record.flush").publishPercentiles(0.5, 0.95, 0.99).register(meterRegistry);
+        flushSize = DistributionSummary.builder("bill.record.flush.size").register(meterRegistry);
+        dropped = meterRegistry.counter("bill.record.dropped");
+        reconciled = meterRegistry.counter("bill.record.reconciled");
+        Gauge.builder("bill.record.queue.size", queue, BlockingQueue::size).register(meterRegistry);
+
+        periodicFlush = billRecordFlushScheduler.scheduleWithFixedDelay(this::flushQuietly,
+                Duration.ofMillis(flushIntervalMillis));
+        log.info("【账单记录】异步批量写入已开启，queueCapacity: {}, batchSize: {}, flushIntervalMillis: {}",
+                queueCapacity, batchSize, flushIntervalMillis);
+    }
+
+    /**
+     * 是否需要写入 bill_record（账单来源为订单表时不需要）
+     */
+    public boolean isEnabled() {
+        return !BillService.SOURCE_ORDERS.equalsIgnoreCase(billSource);
+    }
+
+    /**
+     * 是否为异步批量写入模式
+     */
+    public boolean isWriteBehind() {
+        return MODE_WRITE_BEHIND.equalsIgnoreCase(writeMode);
+    }
+
+    /**
+     * 写入支付账单记录（在支付成功的事务中调用）
+     *
+     * @param order 支付成功的订单
+     */
+    public void savePayRecord(PaymentOrder order) {
+        save(billRecordAssembler.buildPayRecord(order));
+    }
+
+    /**
+     * 写入退款账单记录（在退款成功的事务中调用）
+     *
+     * @param refundOrder 退款成功的退款订单
+     */
+    public void saveRefundRecord(RefundOrder refundOrder) {
+        save(billRecordAssembler.buildRefundRecord(refundOrder));
+    }
+
+    private void save(BillRecord billRecord) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (!isWriteBehind()) {
+            billRecordMapper.insert(billRecord);
+            log.info("【账单记录】写入账单成功，transType: {}, transactionId: {}",
+                    billRecord.getTransType(), billRecord.getTransactionId());
+            return;
+        }
+        // 订单事务提交后才入队，回滚的订单不会产生账单
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(billRecord);
+                }
+            });
+        } else {
+            enqueue(billRecord);
+        }
+    }
+
+    private void enqueue(BillRecord billRecord) {
+        if (!queue.offer(billRecord)) {
+            dropped.increment();
+            log.warn("【账单记录】写入队列已满，等待对账补写，transType: {}, transactionId: {}",
+                    billRecord.getTransType(), billRecord.getTransactionId());
+            return;
+        }
+        if (queue.size() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            try {
+                billRecordFlushScheduler.execute(this::signalledFlush);
+            } catch (TaskRejectedException e) {
+                // 停机中，剩余记录由 shutdown 或对账写入
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * 攒够批次触发的刷盘：开始前清除标记，刷盘期间新攒够的批次可以再提交一次
+     */
+    private void signalledFlush() {
+        flushScheduled.set(false);
+        flushQuietly();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            // 已取出的记录由对账补写
+            log.error("【账单记录】批量写入失败，等待对账补写", e);
+        }
+    }
+
+    /**
+     * 把队列中的记录按批写入数据库，直到队列为空
+     */
+    private void flush() {
+        List<BillRecord> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            long startNanos = System.nanoTime();
+            int inserted = billRecordMapper.insertIgnoreBatch(batch);
+            flushTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            flushSize.record(batch.size());
+            log.debug("【账单记录】批量写入完成，批次大小: {}, 写入: {}", batch.size(), inserted);
+            batch.clear();
+        }
+    }
+
+    /**
+     * 对账补写：扫描最近成功、但没有账单记录的支付和退款订单并补写（仅异步批量写入模式）
+     *
+     * @return 补写的记录数
+     */
+    public int reconcile() {
+        if (!isEnabled() || !isWriteBehind()) {
+            return 0;
+        }
+        LocalDateTime until = LocalDateTime.now().minusSeconds(reconcileLagSeconds);
+        LocalDateTime since = until.minusMinutes(reconcileLookbackMinutes);
+
+        List<BillRecord> missing = new ArrayList<>();
+        for (PaymentOrder order : paymentOrderMapper.selectSuccessWithoutBillRecord(since, until)) {
+            missing.add(billRecordAssembler.buildPayRecord(order));
+        }
+        for (RefundOrder refundOrder : refundOrderMapper.selectSuccessWithoutBillRecord(since, until)) {
+            missing.add(billRecordAssembler.buildRefundRecord(refundOrder));
+        }
+        if (missing.isEmpty()) {
+            return 0;
+        }
+
+        int inserted = 0;
+        for (int from = 0; from < missing.size(); from += batchSize) {
+            inserted += billRecordMapper.insertIgnoreBatch(missing.subList(from, Math.min(from + batchSize, missing.size())));
+        }
+        reconciled.increment(inserted);
+        log.warn("【账单记录】对账补写缺失的账单记录，区间: [{}, {}), 缺失: {}, 写入: {}", since, until, missing.size(), inserted);
+        return inserted;
+    }
+
+    /**
+     * 停机前写入队列中剩余的记录
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (periodicFlush == null) {
+            return;
+        }
+        periodicFlush.cancel(false);
+        flushQuietly();
+    }
+}
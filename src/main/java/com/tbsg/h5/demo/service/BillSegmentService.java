@@ -0,0 +1,227 @@
+package com.tbsg.h5.demo.service;
+
+import com.tbsg.h5.demo.entity.BillRecord;
+import com.tbsg.h5.demo.entity.BillSegment;
+import com.tbsg.h5.demo.mapper.BillExportCheckpointMapper;
+import com.tbsg.h5.demo.mapper.BillRecordMapper;
+import com.tbsg.h5.demo.mapper.BillSegmentMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 账单增量分段服务
+ *
+ * 日间按 bill_record.id 顺序持续把新写入的账单记录导出为 OSS 上的 CSV 分段（无表头），
+ * 并在 bill_export_checkpoint 中记录已导出的最大 id。每日出账时只需过滤全额退款配对记录并按顺序拼接分段，
+ * 不再在凌晨集中扫描整天的账单记录。
+ *
+ * 分段行数与 bill_record 当日行数不一致时（例如有记录在导出延迟之后才提交），
+ * 由 BillService 回退为从数据库全量生成，保证账单完整
+ *
+ * @author demo
+ */
+@Slf4j
+@Service
+public class BillSegmentService {
+
+    /**
+     * 检查点名称
+     */
+    private static final String CHECKPOINT_NAME = "bill_record";
+
+    /**
+     * 账单记录中 transaction_id 所在列（从 0 开始）
+     */
+    private static final int TRANSACTION_ID_COLUMN = 5;
+
+    @Autowired
+    private BillRecordMapper billRecordMapper;
+
+    @Autowired
+    private BillSegmentMapper billSegmentMapper;
+
+    @Autowired
+    private BillExportCheckpointMapper billExportCheckpointMapper;
+
+    @Autowired
+    private OssService ossService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${tbsg.pay.code}")
+    private String payCode;
+
+    /**
+     * 是否启用增量分段
+     */
+    @Value("${tbsg.bill.segment.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 导出延迟（秒）：只导出写入超过该时长的记录，需大于写入账单记录的事务最长耗时
+     */
+    @Value("${tbsg.bill.segment.lag-seconds:60}")
+    private long lagSeconds;
+
+    /**
+     * 单批导出的最大行数
+     */
+    @Value("${tbsg.bill.segment.batch-size:5000}")
+    private int batchSize;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 导出检查点之后的全部新账单记录
+     *
+     * 多实例同时导出时通过检查点的比较并更新保证只有一个实例的分段生效
+     *
+     * @return 本次导出的行数
+     */
+    public synchronized long exportPendingSegments() {
+        billExportCheckpointMapper.insertIfAbsent(CHECKPOINT_NAME);
+        long startMillis = System.currentTimeMillis();
+        long exported = 0;
+        int segmentCount = 0;
+        while (true) {
+            long lastId = billExportCheckpointMapper.selectLastId(CHECKPOINT_NAME);
+            List<BillRecord> records = billRecordMapper.selectExportBatch(lastId, lagSeconds, batchSize);
+            if (records.isEmpty()) {
+                break;
+            }
+            List<BillSegment> segments = writeSegments(records);
+            if (!commitSegments(lastId, records.get(records.size() - 1).getId(), segments)) {
+                log.info("【账单分段】检查点已被其他实例推进，放弃本批分段，lastId: {}", lastId);
+                break;
+            }
+            exported += records.size();
+            segmentCount += segments.size();
+            if (records.size() < batchSize) {
+                break;
+            }
+        }
+        if (exported > 0) {
+            log.info("【账单分段】增量导出完成，行数: {}, 分段数: {}, 耗时: {} ms",
+                    exported, segmentCount, System.currentTimeMillis() - startMillis);
+        }
+        return exported;
+    }
+
+    /**
+     * 判断指定日期的账单记录是否已全部导出到分段
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @return 分段行数与账单记录行数一致时返回 true
+     */
+    public boolean isComplete(String billDate) {
+        long segmentRows = billSegmentMapper.sumRowCountByBillDate(billDate);
+        long recordRows = billRecordMapper.countByBillDate(billDate);
+        if (segmentRows != recordRows) {
+            log.warn("【账单分段】分段行数与账单记录不一致，billDate: {}, 分段行数: {}, 记录行数: {}",
+                    billDate, segmentRows, recordRows);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 按顺序拼接指定日期的分段并写入 CSVPrinter，跳过需要过滤的配对流水
+     *
+     * @param billDate               账单日期（yyyy-MM-dd）
+     * @param csvPrinter             CSV 输出（表头已写入）
+     * @param excludedTransactionIds 需要排除的流水号
+     * @return 写入的行数
+     */
+    public long writeSegmentRecords(String billDate, CSVPrinter csvPrinter, Set<String> excludedTransactionIds) {
+        List<BillSegment> segments = billSegmentMapper.selectByBillDate(billDate);
+        long[] rowCount = {0};
+        for (BillSegment segment : segments) {
+            ossService.readStream(segment.getObjectName(), in -> {
+                CSVParser parser = CSVFormat.DEFAULT.parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+                for (CSVRecord record : parser) {
+                    if (excludedTransactionIds.contains(record.get(TRANSACTION_ID_COLUMN))) {
+                        continue;
+                    }
+                    csvPrinter.printRecord(record);
+                    rowCount[0]++;
+                }
+            });
+        }
+        log.info("【账单分段】拼接分段完成，billDate: {}, 分段数: {}, 行数: {}", billDate, segments.size(), rowCount[0]);
+        return rowCount[0];
+    }
+
+    /**
+     * 按 (账单日期, 交易类型) 分组上传一批记录
+     */
+    private List<BillSegment> writeSegments(List<BillRecord> records) {
+        Map<String, List<BillRecord>> groups = new LinkedHashMap<>();
+        for (BillRecord record : records) {
+            groups.computeIfAbsent(record.getBillDate() + "|" + record.getTransType(), key -> new ArrayList<>())
+                    .add(record);
+        }
+
+        List<BillSegment> segments = new ArrayList<>();
+        for (List<BillRecord> group : groups.values()) {
+            BillRecord first = group.get(0);
+            BillSegment segment = new BillSegment();
+            segment.setBillDate(first.getBillDate().toString());
+            segment.setTransType(first.getTransType());
+            segment.setFirstId(first.getId());
+            segment.setLastId(group.get(group.size() - 1).getId());
+            segment.setRowCount(group.size());
+            // 对象名由 id 区间决定，重复导出同一区间时覆盖同一个对象
+            segment.setObjectName("bills/segments/" + segment.getBillDate() + "/" + payCode + "_" + segment.getTransType()
+                    + "_" + segment.getFirstId() + "_" + segment.getLastId() + ".csv");
+            segment.setCreateTime(LocalDateTime.now());
+
+            ossService.uploadStream(segment.getObjectName(), out -> {
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT);
+                for (BillRecord record : group) {
+                    BillService.printBillRecord(csvPrinter, record);
+                }
+                csvPrinter.flush();
+            });
+            segments.add(segment);
+        }
+        return segments;
+    }
+
+    /**
+     * 在同一事务中登记分段并推进检查点
+     *
+     * @return 检查点推进成功返回 true
+     */
+    private boolean commitSegments(long expectLastId, long lastId, List<BillSegment> segments) {
+        Boolean committed = transactionTemplate.execute(status -> {
+            if (billExportCheckpointMapper.advance(CHECKPOINT_NAME, expectLastId, lastId) == 0) {
+                return false;
+            }
+            segments.forEach(billSegmentMapper::insert);
+            return true;
+        });
+        return Boolean.TRUE.equals(committed);
+    }
+}
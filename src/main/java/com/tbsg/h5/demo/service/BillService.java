@@ -1,23 +1,48 @@
 package com.tbsg.h5.demo.service;
 
+import com.aliyun.oss.model.ObjectMetadata;
+import com.tbsg.h5.demo.cache.BillUrlCache;
 import com.tbsg.h5.demo.entity.BillRecord;
+import com.tbsg.h5.demo.entity.RefundOrder;
+import com.tbsg.h5.demo.enums.TransType;
 import com.tbsg.h5.demo.mapper.BillRecordMapper;
+import com.tbsg.h5.demo.mapper.PaymentOrderMapper;
+import com.tbsg.h5.demo.mapper.RefundOrderMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Data;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
+import org.apache.ibatis.session.ResultHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * 账单服务
@@ -31,54 +56,282 @@ import java.util.stream.Collectors;
 @Service
 public class BillService {
 
+    /**
+     * 可查询的账单天数（T-30）
+     */
+    public static final int BILL_QUERY_DAYS = 30;
+
+    /**
+     * 账单来源：bill_record 表（默认）
+     */
+    public static final String SOURCE_BILL_RECORD = "bill-record";
+
+    /**
+     * 账单来源：直接从 payment_order / refund_order 生成，支付和退款时不再写入 bill_record
+     */
+    public static final String SOURCE_ORDERS = "orders";
+
+    private static final DateTimeFormatter CSV_DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter CSV_DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * 账单 CSV 表头（17个字段）
+     */
+    private static final String[] BILL_HEADERS = {
+        "bill_date",                // 1. 账单日期
+        "pay_code",                 // 2. 支付code
+        "trans_type",               // 3. 交易类型
+        "request_time",             // 4. 请求时间
+        "success_time",             // 5. 成功时间
+        "transaction_id",           // 6. 商户流水号
+        "out_transaction_id",       // 7. 渠道流水号
+        "trans_status",             // 8. 交易状态
+        "trans_amount",             // 9. 交易金额
+        "user_trans_real_amount",   // 10. 用户实际交易金额
+        "settle_amount",            // 11. 结算金额
+        "marketing_amount",         // 12. 营销金额
+        "marketing_type",           // 13. 营销补贴类型
+        "marketing_fee",            // 14. 营销技术服务费
+        "origin_transaction_id",    // 15. 原淘宝闪购支付流水号
+        "rate",                     // 16. 税率
+        "fee"                       // 17. 交易手续费
+    };
+
     @Autowired
     private BillRecordMapper billRecordMapper;
 
+    @Autowired
+    private PaymentOrderMapper paymentOrderMapper;
+
+    @Autowired
+    private RefundOrderMapper refundOrderMapper;
+
+    @Autowired
+    private BillRecordAssembler billRecordAssembler;
+
     @Autowired
     private OssService ossService;
 
+    @Autowired
+    private BillUrlCache billUrlCache;
+
+    @Autowired
+    private BillGenerationCoordinator billGenerationCoordinator;
+
+    @Autowired
+    private BillSegmentService billSegmentService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Value("${tbsg.bill.storage-path}")
     private String storagePath;
 
     @Value("${tbsg.pay.code}")
     private String payCode;
 
+    /**
+     * 账单来源：bill-record-读取 bill_record 表, orders-直接从订单表按成功时间生成
+     */
+    @Value("${tbsg.bill.source:bill-record}")
+    private String billSource;
+
+    /**
+     * 账单导出分片数，1 表示串行导出
+     */
+    @Value("${tbsg.bill.export.partitions:1}")
+    private int exportPartitions;
+
+    @Autowired
+    private ThreadPoolTaskExecutor billExportExecutor;
+
+    /**
+     * 账单压缩方式：none-不压缩, gzip-生成 .csv.gz 压缩版本
+     */
+    @Value("${tbsg.bill.compression:none}")
+    private String compression;
+
+    /**
+     * 开启压缩时是否同时保留未压缩的 CSV
+     */
+    @Value("${tbsg.bill.compression-keep-plain:true}")
+    private boolean compressionKeepPlain;
+
+    /**
+     * 获取已生成账单的下载地址
+     *
+     * 优先使用缓存；未命中时检查 OSS 文件是否存在，存在则生成预签名 URL 并缓存。
+     * 不会触发账单生成，账单不存在时由调用方提交异步生成任务
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @return 预签名下载 URL，账单尚未生成时返回 null
+     */
+    public String findBillDownloadUrl(String billDate) {
+        BillUrlCache.BillUrl cached = billUrlCache.get(billDate);
+        if (cached != null) {
+            log.info("【账单下载】命中下载地址缓存，billDate: {}, objectName: {}", billDate, cached.getObjectName());
+            return cached.getBillUrl();
+        }
+
+        String objectName = getBillObjectName(billDate);
+        if (!ossService.doesObjectExist(objectName)) {
+            log.warn("【账单下载】OSS 文件不存在，objectName: {}", objectName);
+            return null;
+        }
+
+        String billUrl = ossService.getPresignedUrl(objectName);
+        billUrlCache.put(billDate, objectName, billUrl);
+        return billUrl;
+    }
+
     /**
      * 生成账单并上传到 OSS
      *
+     * 同一账单日的并发调用（包括多实例之间）只会执行一次生成，其余调用等待其完成
+     *
      * @param billDate 账单日期
+     * @return 写入的账单行数；账单由其他实例生成时返回 null
      */
-    public void generateAndUploadBill(String billDate) {
+    public Long generateAndUploadBill(String billDate) {
+        return billGenerationCoordinator.runExclusively(billDate,
+                () -> doGenerateAndUploadBill(billDate),
+                () -> ossService.doesObjectExist(getBillObjectName(billDate)));
+    }
+
+    /**
+     * 生成账单并上传到 OSS
+     *
+     * CSV 边生成边以分片方式流式上传到 OSS，不再落本地临时文件。
+     * 开启压缩时同一次生成过程同时输出 gzip 压缩版本（可选保留未压缩版本）
+     *
+     * @param billDate 账单日期
+     * @return 写入的账单行数
+     */
+    private long doGenerateAndUploadBill(String billDate) {
         log.info("【账单下载】开始生成并上传账单，billDate: {}", billDate);
-        String fileName = null;
-        java.io.File file = null;
+        // 账单即将被覆盖，先失效缓存的下载地址
+        billUrlCache.invalidate(billDate);
         try {
-            // 1. 生成本地 CSV 文件
-            fileName = generateBillCsv(billDate);
-            file = new java.io.File(storagePath, fileName);
-
-            // 2. 上传到 OSS
-            String objectName = "bills/" + fileName;
-            ossService.uploadFile(objectName, file);
-
-            log.info("【账单下载】账单上传 OSS 成功，objectName: {}", objectName);
-
+            long[] rowCount = {0};
+            if (!isCompressionEnabled()) {
+                String objectName = getPlainBillObjectName(billDate);
+                ossService.uploadStream(objectName, out -> rowCount[0] = writeBillCsv(billDate, out));
+                log.info("【账单下载】账单上传 OSS 成功，objectName: {}", objectName);
+            } else if (compressionKeepPlain) {
+                // 未压缩和压缩版本同时上传，CSV 只生成一次
+                ossService.uploadStream(getPlainBillObjectName(billDate), plainOut ->
+                        rowCount[0] = uploadCompressedBill(billDate, plainOut));
+            } else {
+                rowCount[0] = uploadCompressedBill(billDate, null);
+            }
+            return rowCount[0];
         } catch (Exception e) {
             log.error("【账单下载】账单生成或上传失败，billDate: {}", billDate, e);
             throw new RuntimeException("账单处理失败", e);
         } finally {
-            // 3. 删除本地临时文件
-            if (file != null && file.exists()) {
-                boolean deleted = file.delete();
-                if (deleted) {
-                    log.info("【账单下载】本地临时文件已删除: {}", file.getAbsolutePath());
-                } else {
-                    log.warn("【账单下载】本地临时文件删除失败: {}", file.getAbsolutePath());
-                }
-            }
+            // 生成期间可能有请求读到旧对象并写入缓存，完成后再失效一次
+            billUrlCache.invalidate(billDate);
         }
     }
 
+    /**
+     * 生成 gzip 压缩的账单并上传到 OSS，记录压缩前后的大小和耗时
+     *
+     * 压缩版本是独立的 .csv.gz 文件（application/gzip，不设置 Content-Encoding），下载方拿到的就是 gzip 文件本身。
+     * 压缩耗时只统计 gzip 自身的 CPU 时间，不包含等待分片上传的阻塞时间
+     *
+     * @param billDate 账单日期
+     * @param plainOut 同时写入未压缩内容的输出流，为 null 时只上传压缩版本
+     * @return 写入的账单行数
+     */
+    private long uploadCompressedBill(String billDate, OutputStream plainOut) {
+        String objectName = getCompressedBillObjectName(billDate);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType("application/gzip");
+
+        long startNanos = System.nanoTime();
+        MeteredOutputStream[] gzipMeter = new MeteredOutputStream[1];
+        MeteredOutputStream[] uploadMeter = new MeteredOutputStream[1];
+        long[] finishNanos = {0};
+        long[] rowCount = {0};
+        long compressedBytes = ossService.uploadStream(objectName, metadata, out -> {
+            // 压缩输出写入上传流的耗时即阻塞在上传上的时间，需要从压缩耗时中扣除
+            uploadMeter[0] = new MeteredOutputStream(out);
+            GZIPOutputStream gzipOut = new GZIPOutputStream(uploadMeter[0], 64 * 1024);
+            gzipMeter[0] = new MeteredOutputStream(gzipOut);
+            OutputStream target = plainOut == null ? gzipMeter[0] : new TeeOutputStream(plainOut, gzipMeter[0]);
+            rowCount[0] = writeBillCsv(billDate, target);
+            long finishStart = System.nanoTime();
+            gzipOut.finish();
+            finishNanos[0] = System.nanoTime() - finishStart;
+        });
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+        long rawBytes = gzipMeter[0].getBytes();
+        long uploadBlockedNanos = uploadMeter[0].getNanos();
+        long compressNanos = Math.max(0, gzipMeter[0].getNanos() + finishNanos[0] - uploadBlockedNanos);
+        DistributionSummary.builder("bill.compression.raw.bytes").baseUnit("bytes")
+                .register(meterRegistry).record(rawBytes);
+        DistributionSummary.builder("bill.compression.compressed.bytes").baseUnit("bytes")
+                .register(meterRegistry).record(compressedBytes);
+        Timer.builder("bill.compression.time").register(meterRegistry)
+                .record(compressNanos, TimeUnit.NANOSECONDS);
+        log.info("【账单下载】压缩账单上传 OSS 成功，objectName: {}, 原始大小: {} bytes, 压缩后: {} bytes, " +
+                        "压缩率: {}%, 压缩耗时: {} ms, 等待上传: {} ms, 总耗时: {} ms",
+                objectName, rawBytes, compressedBytes,
+                rawBytes == 0 ? 100 : String.format("%.1f", compressedBytes * 100.0 / rawBytes),
+                compressNanos / 1_000_000, uploadBlockedNanos / 1_000_000, elapsedMillis);
+        return rowCount[0];
+    }
+
+    /**
+     * 获取下载时返回给平台的账单对象名称
+     *
+     * 保留未压缩版本时返回 .csv，只生成压缩版本时返回 .csv.gz
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @return OSS 对象名称
+     */
+    public String getBillObjectName(String billDate) {
+        return isCompressionEnabled() && !compressionKeepPlain
+                ? getCompressedBillObjectName(billDate) : getPlainBillObjectName(billDate);
+    }
+
+    /**
+     * 获取未压缩账单在 OSS 中的对象名称
+     *
+     * 文件名格式：{payCode}_bill_{date}.csv，OSS 路径：bills/{payCode}_bill_{date}.csv
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @return OSS 对象名称
+     */
+    public String getPlainBillObjectName(String billDate) {
+        return getBillObjectPrefix() + billDate + ".csv";
+    }
+
+    /**
+     * 获取账单对象名称的公共前缀：bills/{payCode}_bill_
+     *
+     * @return OSS 对象名称前缀
+     */
+    public String getBillObjectPrefix() {
+        return "bills/" + payCode + "_bill_";
+    }
+
+    /**
+     * 获取压缩账单在 OSS 中的对象名称：bills/{payCode}_bill_{date}.csv.gz
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @return OSS 对象名称
+     */
+    public String getCompressedBillObjectName(String billDate) {
+        return getPlainBillObjectName(billDate) + ".gz";
+    }
+
+    private boolean isCompressionEnabled() {
+        return "gzip".equalsIgnoreCase(compression);
+    }
+
     /**
      * 生成账单 CSV 文件并保存到本地
      *
@@ -100,100 +353,318 @@ public class BillService {
         String fileName = payCode + "_bill_" + billDate + ".csv";
         java.io.File file = new java.io.File(dir, fileName);
 
-        // 2. 查询账单记录
-        List<BillRecord> billRecords = billRecordMapper.selectByBillDate(billDate);
-
-        if (billRecords == null || billRecords.isEmpty()) {
-            log.warn("【账单下载】账单记录为空，生成空文件，billDate: {}", billDate);
-            generateEmptyCsvFile(file);
-            return fileName;
+        // 2. 流式写入文件
+        try (java.io.BufferedWriter writer = java.nio.file.Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writeBillCsv(billDate, writer);
         }
 
-        log.info("【账单下载】查询到 {} 条账单记录", billRecords.size());
-
-        // 3. 过滤全额支付和全额退款的配对记录（同日整单退款不展示）
-        List<BillRecord> filteredRecords = filterBillRecords(billRecords);
-        log.info("【账单下载】过滤后剩余 {} 条账单记录", filteredRecords.size());
-
-        // 4. 定义 CSV 格式（17个字段）
-        String[] headers = {
-            "bill_date",                // 1. 账单日期
-            "pay_code",                 // 2. 支付code
-            "trans_type",               // 3. 交易类型
-            "request_time",             // 4. 请求时间
-            "success_time",             // 5. 成功时间
-            "transaction_id",           // 6. 商户流水号
-            "out_transaction_id",       // 7. 渠道流水号
-            "trans_status",             // 8. 交易状态
-            "trans_amount",             // 9. 交易金额
-            "user_trans_real_amount",   // 10. 用户实际交易金额
-            "settle_amount",            // 11. 结算金额
-            "marketing_amount",         // 12. 营销金额
-            "marketing_type",           // 13. 营销补贴类型
-            "marketing_fee",            // 14. 营销技术服务费
-            "origin_transaction_id",    // 15. 原淘宝闪购支付流水号
-            "rate",                     // 16. 税率
-            "fee"                       // 17. 交易手续费
-        };
+        log.info("【账单下载】账单生成并保存成功，路径: {}", file.getAbsolutePath());
+        return fileName;
+    }
 
+    /**
+     * 流式生成账单 CSV 内容（UTF-8 编码）
+     *
+     * @param billDate 账单日期（格式：yyyy-MM-dd）
+     * @param out      CSV 输出目标（由调用方负责关闭）
+     * @return 写入的账单行数（不含表头）
+     * @throws IOException CSV 写入失败
+     */
+    public long writeBillCsv(String billDate, OutputStream out) throws IOException {
+        java.io.BufferedWriter writer = new java.io.BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        long rowCount = writeBillCsv(billDate, writer);
+        writer.flush();
+        return rowCount;
+    }
+
+    /**
+     * 流式生成账单 CSV 内容
+     *
+     * 通过 MyBatis 流式结果集逐行读取账单记录并直接写入 CSVPrinter，
+     * 内存占用与当天账单行数无关
+     *
+     * @param billDate 账单日期（格式：yyyy-MM-dd）
+     * @param writer   CSV 输出目标（由调用方负责关闭）
+     * @return 写入的账单行数（不含表头）
+     * @throws IOException CSV 写入失败
+     */
+    public long writeBillCsv(String billDate, Writer writer) throws IOException {
+        // 1. 计算需要过滤的全额支付和全额退款配对记录（同日整单退款不展示）
+        boolean fromOrders = isOrdersSource();
+        Set<String> excludedTransactionIds = fromOrders
+                ? collectExcludedTransactionIdsFromOrders(billDate)
+                : collectExcludedTransactionIds(billDate);
+        log.info("【账单下载】需要过滤的配对流水 {} 条，billDate: {}", excludedTransactionIds.size(), billDate);
+
+        // 2. 定义 CSV 格式（17个字段），创建 CSVPrinter 时即写入表头
         CSVFormat csvFormat = CSVFormat.DEFAULT.builder()
-                .setHeader(headers)
+                .setHeader(BILL_HEADERS)
                 .build();
+        CSVPrinter csvPrinter = new CSVPrinter(writer, csvFormat);
 
-        // 5. 流式写入文件
-        try (java.io.BufferedWriter writer = java.nio.file.Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
-             CSVPrinter csvPrinter = new CSVPrinter(writer, csvFormat)) {
-
-            for (BillRecord record : filteredRecords) {
-                csvPrinter.printRecord(
-                    record.getBillDate(),
-                    record.getPayCode(),
-                    record.getTransType(),
-                    formatDateTime(record.getRequestTime()),
-                    formatDateTime(record.getSuccessTime()),
-                    record.getTransactionId(),
-                    record.getOutTransactionId(),
-                    record.getTransStatus(),
-                    getAmountOrDefault(record.getTransAmount(), 0),
-                    getAmountOrDefault(record.getUserTransRealAmount(), record.getTransAmount()),
-                    getAmountOrDefault(record.getSettleAmount(), 0),
-                    getAmountOrDefault(record.getMarketingAmount(), 0),
-                    record.getMarketingType(),
-                    getAmountOrDefault(record.getMarketingFee(), 0),
-                    record.getOriginTransactionId(),
-                    getAmountOrDefault(record.getRate(), 0),
-                    getAmountOrDefault(record.getFee(), 0)
-                );
-            }
-
+        // 3. 流式查询并逐行写入（账单来源为订单表时直接读取订单表；已有完整增量分段时直接拼接分段，
+        //    分片数大于 1 时并行导出）
+        long rowCount;
+        if (fromOrders) {
+            rowCount = writeOrderRecords(billDate, csvPrinter, excludedTransactionIds);
+            csvPrinter.flush();
+        } else if (isSegmentsReady(billDate)) {
+            rowCount = billSegmentService.writeSegmentRecords(billDate, csvPrinter, excludedTransactionIds);
+            csvPrinter.flush();
+        } else if (exportPartitions > 1) {
+            csvPrinter.flush();
+            rowCount = writePartitionedRecords(billDate, excludedTransactionIds, writer);
+        } else {
+            rowCount = writeRecords(csvPrinter, excludedTransactionIds,
+                    handler -> billRecordMapper.streamByBillDate(billDate, handler));
             csvPrinter.flush();
         }
 
-        log.info("【账单下载】账单生成并保存成功，路径: {}", file.getAbsolutePath());
-        return fileName;
+        if (rowCount == 0) {
+            log.warn("【账单下载】账单记录为空，生成空文件，billDate: {}", billDate);
+        } else {
+            log.info("【账单下载】写入 {} 条账单记录，billDate: {}", rowCount, billDate);
+        }
+        return rowCount;
     }
 
     /**
-     * 生成空的 CSV 文件（只有表头）
+     * 补齐尚未导出的增量分段，并判断分段是否已完整覆盖指定日期的账单记录
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @return 可以直接拼接分段生成账单时返回 true
      */
-    private void generateEmptyCsvFile(java.io.File file) throws IOException {
-        String[] headers = {
-            "bill_date", "pay_code", "trans_type", "request_time", "success_time",
-            "transaction_id", "out_transaction_id", "trans_status", "trans_amount",
-            "user_trans_real_amount", "settle_amount", "marketing_amount", "marketing_type",
-            "marketing_fee", "origin_transaction_id", "rate", "fee"
+    private boolean isSegmentsReady(String billDate) {
+        if (!billSegmentService.isEnabled()) {
+            return false;
+        }
+        try {
+            billSegmentService.exportPendingSegments();
+            return billSegmentService.isComplete(billDate);
+        } catch (Exception e) {
+            log.warn("【账单下载】增量分段不可用，回退为全量生成，billDate: {}", billDate, e);
+            return false;
+        }
+    }
+
+    /**
+     * 将流式查询结果逐行写入 CSVPrinter，跳过需要过滤的配对流水
+     *
+     * @param csvPrinter             CSV 输出
+     * @param excludedTransactionIds 需要排除的流水号
+     * @param query                  流式查询（接收逐行回调）
+     * @return 写入的行数
+     */
+    private long writeRecords(CSVPrinter csvPrinter, Set<String> excludedTransactionIds,
+                              Consumer<ResultHandler<BillRecord>> query) {
+        long[] rowCount = {0};
+        Consumer<BillRecord> printer = rowPrinter(csvPrinter, excludedTransactionIds, rowCount);
+        query.accept(context -> printer.accept(context.getResultObject()));
+        return rowCount[0];
+    }
+
+    /**
+     * 直接从订单表流式生成账单记录：先输出支付成功的订单，再输出退款成功的退款订单，
+     * 均按成功时间排序，与 bill_record 来源的输出顺序（pay 在前，refund 在后）一致
+     *
+     * @param billDate               账单日期（yyyy-MM-dd）
+     * @param csvPrinter             CSV 输出
+     * @param excludedTransactionIds 需要排除的流水号
+     * @return 写入的行数
+     */
+    private long writeOrderRecords(String billDate, CSVPrinter csvPrinter, Set<String> excludedTransactionIds) {
+        LocalDateTime startTime = LocalDate.parse(billDate).atStartOfDay();
+        LocalDateTime endTime = startTime.plusDays(1);
+        long[] rowCount = {0};
+        Consumer<BillRecord> printer = rowPrinter(csvPrinter, excludedTransactionIds, rowCount);
+        paymentOrderMapper.streamSuccessBySuccessTime(startTime, endTime,
+                context -> printer.accept(billRecordAssembler.buildPayRecord(context.getResultObject())));
+        refundOrderMapper.streamSuccessBySuccessTime(startTime, endTime,
+                context -> printer.accept(billRecordAssembler.buildRefundRecord(context.getResultObject())));
+        return rowCount[0];
+    }
+
+    /**
+     * 逐行写入账单记录，跳过需要过滤的配对流水，写入行数累加到 rowCount[0]
+     */
+    private static Consumer<BillRecord> rowPrinter(CSVPrinter csvPrinter, Set<String> excludedTransactionIds,
+                                                   long[] rowCount) {
+        return record -> {
+            if (excludedTransactionIds.contains(record.getTransactionId())) {
+                return;
+            }
+            try {
+                printBillRecord(csvPrinter, record);
+            } catch (IOException e) {
+                // ResultHandler 不允许抛出受检异常，包装后由 MyBatis 向上抛出
+                throw new UncheckedIOException(e);
+            }
+            rowCount[0]++;
         };
+    }
 
-        CSVFormat csvFormat = CSVFormat.DEFAULT.builder()
-                .setHeader(headers)
-                .build();
+    private boolean isOrdersSource() {
+        return SOURCE_ORDERS.equalsIgnoreCase(billSource);
+    }
+
+    /**
+     * 分片并行导出账单记录
+     *
+     * 将账单日按 (交易类型, 创建时间区间) 拆分为多个分片，在 billExportExecutor 上并行渲染到本地临时文件，
+     * 再按 trans_type、create_time 的顺序依次拼接，输出顺序与串行导出一致
+     *
+     * @param billDate               账单日期（yyyy-MM-dd）
+     * @param excludedTransactionIds 需要排除的流水号
+     * @param writer                 CSV 输出目标（表头已写入）
+     * @return 写入的行数
+     * @throws IOException 分片渲染或拼接失败
+     */
+    private long writePartitionedRecords(String billDate, Set<String> excludedTransactionIds, Writer writer)
+            throws IOException {
+        long startMillis = System.currentTimeMillis();
+
+        // 1. 划分分片：交易类型按字典序（pay 在前，refund 在后），每种类型再按创建时间切分
+        LocalDateTime dayStart = LocalDate.parse(billDate).atStartOfDay();
+        long sliceSeconds = 24 * 3600L / exportPartitions;
+        List<String> transTypes = Arrays.stream(TransType.values())
+                .map(TransType::getCode)
+                .sorted()
+                .collect(Collectors.toList());
+
+        java.io.File dir = new java.io.File(storagePath);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
 
+        // 2. 提交分片任务
+        List<Future<BillChunk>> futures = new ArrayList<>();
+        for (String transType : transTypes) {
+            for (int i = 0; i < exportPartitions; i++) {
+                // 首尾分片不设边界，覆盖跨零点写入的记录
+                LocalDateTime startTime = i == 0 ? null : dayStart.plusSeconds(sliceSeconds * i);
+                LocalDateTime endTime = i == exportPartitions - 1 ? null : dayStart.plusSeconds(sliceSeconds * (i + 1));
+                futures.add(billExportExecutor.submit(
+                        () -> renderChunk(dir, billDate, transType, startTime, endTime, excludedTransactionIds)));
+            }
+        }
+
+        // 3. 按分片顺序拼接
+        List<BillChunk> chunks = new ArrayList<>();
+        try {
+            for (Future<BillChunk> future : futures) {
+                chunks.add(future.get());
+            }
+            for (BillChunk chunk : chunks) {
+                appendFile(chunk.getFile(), writer);
+            }
+            writer.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("账单分片导出被中断", e);
+        } catch (ExecutionException e) {
+            throw new IOException("账单分片导出失败", e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+            for (Future<BillChunk> future : futures) {
+                deleteChunkQuietly(future);
+            }
+        }
+
+        // 4. 输出耗时与并行加速比：分片累计耗时 / 墙钟耗时
+        long wallMillis = Math.max(1, System.currentTimeMillis() - startMillis);
+        long rowCount = chunks.stream().mapToLong(BillChunk::getRowCount).sum();
+        long busyMillis = chunks.stream().mapToLong(BillChunk::getElapsedMillis).sum();
+        log.info("【账单下载】分片导出完成，billDate: {}, 分片数: {}, CPU 核数: {}, 行数: {}, 总耗时: {} ms, " +
+                        "分片累计耗时: {} ms, 加速比: {}, 吞吐: {} 行/秒",
+                billDate, chunks.size(), Runtime.getRuntime().availableProcessors(), rowCount, wallMillis,
+                busyMillis, String.format("%.2f", (double) busyMillis / wallMillis), rowCount * 1000 / wallMillis);
+        return rowCount;
+    }
+
+    /**
+     * 渲染单个分片到本地临时文件（不含表头）
+     */
+    private BillChunk renderChunk(java.io.File dir, String billDate, String transType,
+                                  LocalDateTime startTime, LocalDateTime endTime,
+                                  Set<String> excludedTransactionIds) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        java.io.File file = java.nio.file.Files.createTempFile(dir.toPath(),
+                payCode + "_bill_" + billDate + "_" + transType + "_", ".part").toFile();
+        BillChunk chunk = new BillChunk(file);
         try (java.io.BufferedWriter writer = java.nio.file.Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
-             CSVPrinter csvPrinter = new CSVPrinter(writer, csvFormat)) {
-            csvPrinter.flush();
+             CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
+            chunk.setRowCount(writeRecords(csvPrinter, excludedTransactionIds,
+                    handler -> billRecordMapper.streamByBillDateRange(billDate, transType, startTime, endTime, handler)));
+        } catch (IOException | RuntimeException e) {
+            file.delete();
+            throw e;
+        }
+        // 其他分片失败时本分片会被取消，此时结果不再被拼接，直接清理
+        if (Thread.currentThread().isInterrupted()) {
+            file.delete();
+            throw new java.io.InterruptedIOException("账单分片已取消");
+        }
+        chunk.setElapsedMillis(System.currentTimeMillis() - startMillis);
+        log.debug("【账单下载】分片渲染完成，transType: {}, 区间: [{}, {}), 行数: {}, 耗时: {} ms",
+                transType, startTime, endTime, chunk.getRowCount(), chunk.getElapsedMillis());
+        return chunk;
+    }
+
+    /**
+     * 将分片文件内容追加到输出
+     */
+    private void appendFile(java.io.File file, Writer writer) throws IOException {
+        try (java.io.Reader reader = java.nio.file.Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                writer.write(buffer, 0, read);
+            }
         }
     }
 
+    /**
+     * 删除已完成分片的临时文件
+     */
+    private void deleteChunkQuietly(Future<BillChunk> future) {
+        if (!future.isDone() || future.isCancelled()) {
+            return;
+        }
+        try {
+            java.io.File file = future.get().getFile();
+            if (file.exists() && !file.delete()) {
+                log.warn("【账单下载】分片临时文件删除失败: {}", file.getAbsolutePath());
+            }
+        } catch (Exception ignored) {
+            // 分片本身失败时临时文件已在 renderChunk 中删除
+        }
+    }
+
+    /**
+     * 按 17 个字段顺序输出一行账单
+     */
+    static void printBillRecord(CSVPrinter csvPrinter, BillRecord record) throws IOException {
+        csvPrinter.printRecord(
+            formatDate(record.getBillDate()),
+            record.getPayCode(),
+            record.getTransType(),
+            formatDateTime(record.getRequestTime()),
+            formatDateTime(record.getSuccessTime()),
+            record.getTransactionId(),
+            record.getOutTransactionId(),
+            record.getTransStatus(),
+            getAmountOrDefault(record.getTransAmount(), 0),
+            getAmountOrDefault(record.getUserTransRealAmount(), record.getTransAmount()),
+            getAmountOrDefault(record.getSettleAmount(), 0),
+            getAmountOrDefault(record.getMarketingAmount(), 0),
+            record.getMarketingType(),
+            getAmountOrDefault(record.getMarketingFee(), 0),
+            record.getOriginTransactionId(),
+            getAmountOrDefault(record.getRate(), 0),
+            getAmountOrDefault(record.getFee(), 0)
+        );
+    }
+
     /**
      * 获取金额，如果为空则返回默认值
      *
@@ -201,7 +672,7 @@ public class BillService {
      * @param defaultValue 默认值
      * @return 金额
      */
-    private Integer getAmountOrDefault(Integer amount, Integer defaultValue) {
+    private static Integer getAmountOrDefault(Integer amount, Integer defaultValue) {
         if (amount == null) {
             return defaultValue;
         }
@@ -209,16 +680,29 @@ public class BillService {
     }
 
     /**
-     * 格式化日期时间
+     * 格式化账单日期（yyyy-MM-dd）
+     *
+     * @param date 日期
+     * @return 格式化后的日期字符串，为空时返回空字符串
+     */
+    private static String formatDate(LocalDate date) {
+        if (date == null) {
+            return "";
+        }
+        return date.format(CSV_DATE_FORMATTER);
+    }
+
+    /**
+     * 格式化日期时间（yyyy-MM-dd HH:mm:ss）
      *
-     * @param dateTime 日期时间字符串
-     * @return 格式化后的日期时间字符串
+     * @param dateTime 日期时间
+     * @return 格式化后的日期时间字符串，为空时返回空字符串
      */
-    private String formatDateTime(String dateTime) {
-        if (dateTime == null || dateTime.isEmpty()) {
+    private static String formatDateTime(LocalDateTime dateTime) {
+        if (dateTime == null) {
             return "";
         }
-        return dateTime;
+        return dateTime.format(CSV_DATETIME_FORMATTER);
     }
 
     /**
@@ -237,7 +721,7 @@ public class BillService {
             LocalDate date = LocalDate.parse(billDate, formatter);
 
             // T-30 校验：只能查询最近 30 天内的账单
-            LocalDate limitDate = LocalDate.now().minusDays(30);
+            LocalDate limitDate = LocalDate.now().minusDays(BILL_QUERY_DAYS);
             if (date.isBefore(limitDate)) {
                 log.warn("【账单下载】账单日期超出 T-30 限制，billDate: {}", billDate);
                 return false;
@@ -251,59 +735,109 @@ public class BillService {
     }
 
     /**
-     * 过滤账单记录，移除同一天内全额支付和全额退款的配对记录
+     * 计算需要过滤的流水号：同一天内全额支付和全额退款的配对记录
+     *
+     * 配对在数据库侧通过自关联完成，内存中只保留配对成功的流水号，
+     * 写入 CSV 时逐行判断是否排除
      *
-     * @param billRecords 原始账单记录列表
-     * @return 过滤后的账单记录列表
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @return 需要排除的流水号（支付流水号和退款流水号）
      */
-    private List<BillRecord> filterBillRecords(List<BillRecord> billRecords) {
-        if (billRecords == null || billRecords.isEmpty()) {
-            return billRecords;
-        }
+    private Set<String> collectExcludedTransactionIds(String billDate) {
+        Set<String> excludedTransactionIds = new HashSet<>();
+        billRecordMapper.streamFullRefundPairsByBillDate(billDate, context -> {
+            BillRecord pair = context.getResultObject();
+            // 匹配成功：将支付记录和退款记录都标记为排除
+            excludedTransactionIds.add(pair.getOriginTransactionId());
+            excludedTransactionIds.add(pair.getTransactionId());
+        });
+        return excludedTransactionIds;
+    }
 
-        // 用于存储需要排除的记录ID
+    /**
+     * 从订单表计算需要过滤的流水号，配对规则与 {@link #collectExcludedTransactionIds} 一致
+     *
+     * @param billDate 账单日期（yyyy-MM-dd）
+     * @return 需要排除的流水号（支付流水号和退款流水号）
+     */
+    private Set<String> collectExcludedTransactionIdsFromOrders(String billDate) {
+        LocalDateTime startTime = LocalDate.parse(billDate).atStartOfDay();
         Set<String> excludedTransactionIds = new HashSet<>();
+        refundOrderMapper.streamFullRefundPairsBySuccessTime(startTime, startTime.plusDays(1), context -> {
+            RefundOrder pair = context.getResultObject();
+            excludedTransactionIds.add(pair.getTransactionId());
+            excludedTransactionIds.add(pair.getRefundNo());
+        });
+        return excludedTransactionIds;
+    }
 
-        // 1. 构建支付记录的映射：transactionId -> BillRecord
-        Map<String, BillRecord> payRecordMap = billRecords.stream()
-                .filter(record -> "pay".equals(record.getTransType()))
-                .collect(Collectors.toMap(
-                        BillRecord::getTransactionId,
-                        record -> record,
-                        (existing, replacement) -> existing
-                ));
-
-        // 2. 遍历所有退款记录，查找匹配的支付记录
-        for (BillRecord refundRecord : billRecords) {
-            if (!"refund".equals(refundRecord.getTransType())) {
-                continue;
-            }
+    /**
+     * 账单导出分片
+     */
+    @Data
+    private static class BillChunk {
+        private final java.io.File file;
+        private long rowCount;
+        private long elapsedMillis;
+    }
 
-            String originTransactionId = refundRecord.getOriginTransactionId();
-            if (originTransactionId == null) {
-                continue;
-            }
+    /**
+     * 统计写入字节数及下游写入耗时的输出流
+     */
+    @Getter
+    private static class MeteredOutputStream extends FilterOutputStream {
+        private long bytes;
+        private long nanos;
 
-            // 查找对应的支付记录
-            BillRecord payRecord = payRecordMap.get(originTransactionId);
-            if (payRecord == null) {
-                continue;
-            }
+        MeteredOutputStream(OutputStream out) {
+            super(out);
+        }
 
-            // 3. 检查是否为全额退款
-            Integer refundAmount = refundRecord.getTransAmount();
-            Integer payAmount = payRecord.getTransAmount();
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            out.write(b);
+            nanos += System.nanoTime() - start;
+            bytes++;
+        }
 
-            if (refundAmount != null && refundAmount.equals(payAmount)) {
-                // 匹配成功：将支付记录和退款记录都标记为排除
-                excludedTransactionIds.add(payRecord.getTransactionId());
-                excludedTransactionIds.add(refundRecord.getTransactionId());
-            }
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            out.write(b, off, len);
+            nanos += System.nanoTime() - start;
+            bytes += len;
         }
+    }
 
-        // 4. 返回未被排除的记录
-        return billRecords.stream()
-                .filter(record -> !excludedTransactionIds.contains(record.getTransactionId()))
-                .collect(Collectors.toList());
+    /**
+     * 同时写入两个输出流
+     */
+    private static class TeeOutputStream extends OutputStream {
+        private final OutputStream first;
+        private final OutputStream second;
+
+        TeeOutputStream(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            second.flush();
+        }
     }
-}
\ No newline at end of file
+}
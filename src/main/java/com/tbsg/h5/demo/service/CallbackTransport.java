@@ -0,0 +1,33 @@
+package com.tbsg.h5.demo.service;
+
+import com.tbsg.h5.demo.enums.CallbackResult;
+import eleme.openapi.h5.sdk.pay.model.request.PayCallbackRequest;
+import eleme.openapi.h5.sdk.pay.model.request.RefundCallbackRequest;
+
+/**
+ * 回调淘宝闪购的传输层
+ *
+ * 回调通知发件箱只依赖此接口，更换 HTTP 客户端或签名实现时不需要修改发送和重试逻辑
+ *
+ * @author demo
+ */
+public interface CallbackTransport {
+
+    /**
+     * 发送支付结果通知
+     *
+     * @param request   支付回调请求
+     * @param notifyUrl 淘宝闪购回调地址
+     * @return 发送结果，NOT_SENT 表示因本地背压未发出请求
+     */
+    CallbackResult sendPayCallback(PayCallbackRequest request, String notifyUrl);
+
+    /**
+     * 发送退款结果通知
+     *
+     * @param request   退款回调请求
+     * @param notifyUrl 淘宝闪购回调地址
+     * @return 发送结果，NOT_SENT 表示因本地背压未发出请求
+     */
+    CallbackResult sendRefundCallback(RefundCallbackRequest request, String notifyUrl);
+}
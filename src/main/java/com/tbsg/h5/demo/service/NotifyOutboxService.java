@@ -0,0 +1,328 @@
+package com.tbsg.h5.demo.service;
+
+import com.tbsg.h5.demo.constants.PaymentConstants;
+import com.tbsg.h5.demo.entity.NotifyOutbox;
+import com.tbsg.h5.demo.entity.PaymentOrder;
+import com.tbsg.h5.demo.entity.RefundOrder;
+import com.tbsg.h5.demo.enums.CallbackResult;
+import com.tbsg.h5.demo.enums.NotifyStatus;
+import com.tbsg.h5.demo.enums.NotifyType;
+import com.tbsg.h5.demo.mapper.NotifyOutboxMapper;
+import com.tbsg.h5.demo.mapper.PaymentOrderMapper;
+import com.tbsg.h5.demo.mapper.RefundOrderMapper;
+import eleme.openapi.h5.sdk.pay.model.request.PayCallbackRequest;
+import eleme.openapi.h5.sdk.pay.model.request.RefundCallbackRequest;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 回调通知发件箱服务
+ *
+ * 支付成功（更新订单状态）、退款成功（processRefund）时在同一事务中写入 notify_outbox，
+ * 事务提交后立即投递到有界的 notifyExecutor 发送，业务请求不再等待淘宝闪购的响应。
+ * 发送失败按 tbsg.notify.retry-intervals-seconds（默认 1s, 5s, 5s, 10s, 30s, 1m, 5m, 10m）退避重试，
+ * 超出列表长度后按最后一个间隔重试，达到 tbsg.notify.max-attempts 后标记为死信（DEAD）不再自动重试；
+ * 定时任务按批扫描到期的通知兜底（重启、线程池满、实例宕机）。
+ *
+ * 去重：
+ * 1. 同一业务单号同一通知类型只有一条记录（uk_notify_type_biz_no）
+ * 2. 发送前按发送次数乐观锁认领，多实例或多线程不会同时发送同一通知
+ *
+ * 指标（tag type=PAY/REFUND）：
+ * notify.send-单次发送耗时（tag result=success/fail，带 P50/P95/P99，count 即吞吐），
+ * notify.delivery-从写入发件箱到送达的端到端延迟，notify.dead-进入死信的通知数，notify.inflight-本实例发送中的通知数
+ *
+ * @author demo
+ */
+@Slf4j
+@Service
+public class NotifyOutboxService {
+
+    @Autowired
+    private NotifyOutboxMapper notifyOutboxMapper;
+
+    @Autowired
+    private PaymentOrderMapper paymentOrderMapper;
+
+    @Autowired
+    private RefundOrderMapper refundOrderMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private CallbackTransport callbackTransport;
+
+    @Autowired
+    private ThreadPoolTaskExecutor notifyExecutor;
+
+    @Value("${tbsg.pay.code}")
+    private String payCode;
+
+    /**
+     * 退款结果回调地址，未配置时使用原支付订单的 notifyUrl
+     */
+    @Value("${tbsg.notify.refund-notify-url:}")
+    private String refundNotifyUrl;
+
+    /**
+     * 重试间隔（秒），第 n 次发送失败后等待第 n 个间隔
+     */
+    @Value("${tbsg.notify.retry-intervals-seconds:1,5,5,10,30,60,300,600}")
+    private long[] retryIntervalsSeconds;
+
+    /**
+     * 最大发送次数（含首次），超过后标记为死信
+     */
+    @Value("${tbsg.notify.max-attempts:20}")
+    private int maxAttempts;
+
+    /**
+     * 单次发送的租约时长（秒），需大于回调超时时间；认领后实例宕机，租约到期后重新发送
+     */
+    @Value("${tbsg.notify.lease-seconds:60}")
+    private long leaseSeconds;
+
+    /**
+     * 定时扫描单批最大条数
+     */
+    @Value("${tbsg.notify.batch-size:100}")
+    private int batchSize;
+
+    /**
+     * 本实例正在发送的通知ID，避免事务提交后的投递和定时扫描重复提交同一通知
+     */
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("notify.inflight", inFlight, Set::size).register(meterRegistry);
+    }
+
+    /**
+     * 写入支付结果通知（需在更新订单状态的事务中调用）
+     *
+     * 同一订单已有通知时忽略；事务提交后立即投递发送
+     *
+     * @param order     支付订单
+     * @param notifyUrl 淘宝闪购回调地址
+     */
+    public void enqueuePayNotify(PaymentOrder order, String notifyUrl) {
+        enqueue(NotifyType.PAY, order.getTransactionId(), notifyUrl);
+    }
+
+    /**
+     * 写入退款结果通知（需在创建退款订单的事务中调用）
+     *
+     * 退款请求不携带回调地址，优先使用 tbsg.notify.refund-notify-url，未配置时使用原支付订单的 notifyUrl
+     *
+     * @param refundOrder  退款订单
+     * @param payNotifyUrl 原支付订单的 notifyUrl
+     */
+    public void enqueueRefundNotify(RefundOrder refundOrder, String payNotifyUrl) {
+        String notifyUrl = refundNotifyUrl == null || refundNotifyUrl.isEmpty() ? payNotifyUrl : refundNotifyUrl;
+        if (notifyUrl == null || notifyUrl.isEmpty()) {
+            log.warn("【回调通知】原支付订单没有回调地址，不发送退款通知，refundNo: {}", refundOrder.getRefundNo());
+            return;
+        }
+        enqueue(NotifyType.REFUND, refundOrder.getRefundNo(), notifyUrl);
+    }
+
+    private void enqueue(NotifyType notifyType, String bizNo, String notifyUrl) {
+        LocalDateTime now = LocalDateTime.now();
+        NotifyOutbox outbox = new NotifyOutbox();
+        outbox.setNotifyType(notifyType.getCode());
+        outbox.setBizNo(bizNo);
+        outbox.setNotifyUrl(notifyUrl);
+        outbox.setStatus(NotifyStatus.PENDING.getCode());
+        outbox.setAttempts(0);
+        outbox.setNextRetryTime(now);
+        outbox.setCreateTime(now);
+        outbox.setUpdateTime(now);
+        try {
+            notifyOutboxMapper.insert(outbox);
+        } catch (DuplicateKeyException e) {
+            log.info("【回调通知】通知已存在，忽略，notifyType: {}, bizNo: {}", notifyType.getCode(), bizNo);
+            return;
+        }
+        log.info("【回调通知】写入发件箱，id: {}, notifyType: {}, bizNo: {}", outbox.getId(), notifyType.getCode(), bizNo);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatch(outbox);
+                }
+            });
+        } else {
+            dispatch(outbox);
+        }
+    }
+
+    /**
+     * 扫描到期的通知并投递发送（定时任务调用）
+     *
+     * @return 本次投递的条数
+     */
+    public int dispatchDue() {
+        List<NotifyOutbox> dueList = notifyOutboxMapper.selectDue(LocalDateTime.now(), batchSize);
+        int dispatched = 0;
+        for (NotifyOutbox outbox : dueList) {
+            if (dispatch(outbox)) {
+                dispatched++;
+            }
+        }
+        return dispatched;
+    }
+
+    /**
+     * 投递到发送线程池；线程池已满时保留为待发送，由下一轮扫描重试
+     */
+    private boolean dispatch(NotifyOutbox outbox) {
+        if (!inFlight.add(outbox.getId())) {
+            return false;
+        }
+        try {
+            notifyExecutor.execute(() -> {
+                try {
+                    send(outbox);
+                } finally {
+                    inFlight.remove(outbox.getId());
+                }
+            });
+            return true;
+        } catch (TaskRejectedException e) {
+            inFlight.remove(outbox.getId());
+            log.warn("【回调通知】发送线程池已满，等待下次扫描，id: {}", outbox.getId());
+            return false;
+        }
+    }
+
+    private void send(NotifyOutbox outbox) {
+        int attempts = outbox.getAttempts();
+        LocalDateTime now = LocalDateTime.now();
+        if (notifyOutboxMapper.claim(outbox.getId(), attempts, now.plusSeconds(leaseSeconds), now) == 0) {
+            log.debug("【回调通知】通知已被其他线程认领或已送达，id: {}", outbox.getId());
+            return;
+        }
+        attempts++;
+
+        long startNanos = System.nanoTime();
+        CallbackResult result;
+        String error = null;
+        try {
+            result = doSend(outbox);
+        } catch (Exception e) {
+            log.error("【回调通知】发送异常，id: {}, bizNo: {}", outbox.getId(), outbox.getBizNo(), e);
+            result = CallbackResult.FAILED;
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+
+        if (result == CallbackResult.NOT_SENT) {
+            // 本地背压未发出请求，释放认领，不计入发送次数
+            long delaySeconds = retryIntervalsSeconds[0];
+            notifyOutboxMapper.releaseClaim(outbox.getId(), attempts, LocalDateTime.now().plusSeconds(delaySeconds),
+                    LocalDateTime.now());
+            log.info("【回调通知】回调未发出，{} 秒后重新发送，id: {}, bizNo: {}", delaySeconds, outbox.getId(), outbox.getBizNo());
+            return;
+        }
+        Timer.builder("notify.send").tags("type", outbox.getNotifyType(),
+                        "result", result == CallbackResult.DELIVERED ? "success" : "fail")
+                .publishPercentiles(0.5, 0.95, 0.99).register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+
+        if (result == CallbackResult.DELIVERED) {
+            LocalDateTime successTime = LocalDateTime.now();
+            notifyOutboxMapper.markSuccess(outbox.getId(), successTime);
+            if (outbox.getCreateTime() != null) {
+                deliveryTimer(outbox.getNotifyType()).record(Duration.between(outbox.getCreateTime(), successTime));
+            }
+            log.info("【回调通知】送达成功，id: {}, bizNo: {}, 第 {} 次发送", outbox.getId(), outbox.getBizNo(), attempts);
+            return;
+        }
+
+        if (error == null) {
+            error = "回调淘宝闪购失败";
+        }
+        if (error.length() > 512) {
+            error = error.substring(0, 512);
+        }
+        if (attempts >= maxAttempts) {
+            notifyOutboxMapper.markDead(outbox.getId(), error, LocalDateTime.now());
+            meterRegistry.counter("notify.dead", "type", outbox.getNotifyType()).increment();
+            log.error("【回调通知】发送 {} 次仍失败，标记为死信，id: {}, notifyType: {}, bizNo: {}, 原因: {}",
+                    attempts, outbox.getId(), outbox.getNotifyType(), outbox.getBizNo(), error);
+            return;
+        }
+
+        long delaySeconds = retryIntervalsSeconds[Math.min(attempts, retryIntervalsSeconds.length) - 1];
+        notifyOutboxMapper.markRetry(outbox.getId(), LocalDateTime.now().plusSeconds(delaySeconds), error,
+                LocalDateTime.now());
+        log.warn("【回调通知】第 {} 次发送失败，{} 秒后重试，id: {}, bizNo: {}, 原因: {}",
+                attempts, delaySeconds, outbox.getId(), outbox.getBizNo(), error);
+    }
+
+    /**
+     * 按通知类型组装回调请求并发送
+     *
+     * @return 发送结果
+     */
+    private CallbackResult doSend(NotifyOutbox outbox) {
+        if (NotifyType.REFUND.getCode().equals(outbox.getNotifyType())) {
+            return sendRefundNotify(outbox);
+        }
+        return sendPayNotify(outbox);
+    }
+
+    private CallbackResult sendPayNotify(NotifyOutbox outbox) {
+        PaymentOrder order = paymentOrderMapper.selectByTransactionId(outbox.getBizNo());
+        if (order == null) {
+            throw new IllegalStateException("支付订单不存在");
+        }
+        PayCallbackRequest request = new PayCallbackRequest();
+        request.setPayCode(payCode);
+        request.setTransactionId(order.getTransactionId());
+        request.setOutTradeNo(order.getOutTradeNo());
+        request.setPayAmount(order.getPayAmount());
+        request.setPayStatus(PaymentConstants.SUCCESS);
+        return callbackTransport.sendPayCallback(request, outbox.getNotifyUrl());
+    }
+
+    private CallbackResult sendRefundNotify(NotifyOutbox outbox) {
+        RefundOrder refundOrder = refundOrderMapper.selectByRefundNo(outbox.getBizNo());
+        if (refundOrder == null) {
+            throw new IllegalStateException("退款订单不存在");
+        }
+        RefundCallbackRequest request = new RefundCallbackRequest();
+        request.setPayCode(payCode);
+        request.setRefundNo(refundOrder.getRefundNo());
+        request.setOutRefundNo(refundOrder.getOutRefundNo());
+        request.setTransactionId(refundOrder.getTransactionId());
+        request.setRefundAmount(refundOrder.getRefundAmount());
+        request.setRefundStatus(refundOrder.getRefundStatus());
+        return callbackTransport.sendRefundCallback(request, outbox.getNotifyUrl());
+    }
+
+    private Timer deliveryTimer(String notifyType) {
+        return Timer.builder("notify.delivery").tag("type", notifyType)
+                .publishPercentiles(0.5, 0.95, 0.99).register(meterRegistry);
+    }
+}
@@ -0,0 +1,414 @@
+package com.tbsg.h5.demo.service;
+
+import com.aliyun.oss.model.ObjectMetadata;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.tbsg.h5.demo.cache.PaymentOrderCache;
+import com.tbsg.h5.demo.cache.RefundOrderCache;
+import com.tbsg.h5.demo.entity.OrderArchiveIndex;
+import com.tbsg.h5.demo.entity.PaymentOrder;
+import com.tbsg.h5.demo.entity.RefundOrder;
+import com.tbsg.h5.demo.enums.TransType;
+import com.tbsg.h5.demo.mapper.BillGenerationLeaseMapper;
+import com.tbsg.h5.demo.mapper.OrderArchiveIndexMapper;
+import com.tbsg.h5.demo.mapper.PaymentOrderMapper;
+import com.tbsg.h5.demo.mapper.RefundOrderMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 订单归档服务
+ *
+ * 更新时间早于 after-days 天前的终态支付订单（SUCCESS/CLOSED/FAIL）连同其退款订单归档到 OSS 后从订单表删除，
+ * 热点查询不再需要的历史订单不再占用 InnoDB 缓冲池：
+ * 1. 按 (update_time, id) 游标每批读取 batch-size 条支付订单及其退款订单
+ * 2. 以带表头的 gzip CSV（null 写为 \N）分别上传支付订单和退款订单，最后上传记录文件、行数和字节数的清单（manifest）
+ * 3. 在同一事务中写入 order_archive_index 并按主键删除本批订单；归档期间有变更的订单不删除，留到下次归档
+ * 4. 每批之间暂停 pause-millis 毫秒，单轮最多 max-batches-per-run 批，避免长事务和主从延迟
+ * 5. 多实例部署时通过 bill_generation_lease 表中键为 archive 的租约互斥，只有一个实例执行归档；
+ *    租约到期前停止本轮归档，剩余订单留到下一轮
+ *
+ * 已归档的订单仍可通过 queryPay/queryRefund 的慢路径查询（按索引找到归档文件后流式扫描），
+ * 不再支持退款、关单和支付回调；重复下单会被拒绝，重复退款返回归档中的退款结果。
+ * after-days 不小于 31 天，保证 T-30 账单窗口内的订单都还在订单表中
+ *
+ * 指标：order.archive.rows-归档删除的行数（tag table），order.archive.lookup-慢路径查询耗时（tag type）
+ *
+ * @author demo
+ */
+@Slf4j
+@Service
+public class OrderArchiveService {
+
+    private static final DateTimeFormatter BATCH_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    /**
+     * 最小归档期限（天），需覆盖 T-30 账单窗口
+     */
+    private static final int MIN_ARCHIVE_AFTER_DAYS = 31;
+
+    /**
+     * 归档租约在 bill_generation_lease 表中的键
+     */
+    private static final String ARCHIVE_LEASE_KEY = "archive";
+
+    /**
+     * 归档 CSV 格式：null 写为 \N，与空字符串区分
+     */
+    private static final CSVFormat ARCHIVE_CSV_FORMAT = CSVFormat.DEFAULT.builder().setNullString("\\N").build();
+
+    /**
+     * 订单与 CSV 行之间的转换，时间字段使用 ISO 格式，读取旧归档文件时忽略已删除的列
+     */
+    private static final ObjectMapper ARCHIVE_MAPPER = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private static final TypeReference<LinkedHashMap<String, Object>> ROW_TYPE =
+            new TypeReference<LinkedHashMap<String, Object>>() {
+            };
+
+    @Autowired
+    private PaymentOrderMapper paymentOrderMapper;
+
+    @Autowired
+    private RefundOrderMapper refundOrderMapper;
+
+    @Autowired
+    private OrderArchiveIndexMapper orderArchiveIndexMapper;
+
+    @Autowired
+    private PaymentOrderCache paymentOrderCache;
+
+    @Autowired
+    private RefundOrderCache refundOrderCache;
+
+    @Autowired
+    private OssService ossService;
+
+    @Autowired
+    private BillGenerationLeaseMapper billGenerationLeaseMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${tbsg.archive.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 归档期限（天）：更新时间早于该天数的终态订单才会归档
+     */
+    @Value("${tbsg.archive.after-days:180}")
+    private int afterDays;
+
+    /**
+     * 每批归档的支付订单数
+     */
+    @Value("${tbsg.archive.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * 单轮最多归档的批数
+     */
+    @Value("${tbsg.archive.max-batches-per-run:200}")
+    private int maxBatchesPerRun;
+
+    /**
+     * 每批之间的暂停时间（毫秒）
+     */
+    @Value("${tbsg.archive.pause-millis:100}")
+    private long pauseMillis;
+
+    /**
+     * 归档租约时长（秒），单轮归档在租约到期前停止
+     */
+    @Value("${tbsg.archive.lease-seconds:3600}")
+    private long leaseSeconds;
+
+    /**
+     * 当前实例标识：pid@hostname + 随机后缀
+     */
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName()
+            + ":" + UUID.randomUUID().toString().substring(0, 8);
+
+    @PostConstruct
+    public void init() {
+        if (afterDays < MIN_ARCHIVE_AFTER_DAYS) {
+            log.warn("【订单归档】after-days: {} 小于账单窗口，按 {} 天处理", afterDays, MIN_ARCHIVE_AFTER_DAYS);
+            afterDays = MIN_ARCHIVE_AFTER_DAYS;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 获取归档租约后归档超过期限的订单，其他实例持有租约时直接返回
+     *
+     * @return 本轮删除的支付订单数
+     */
+    public long archive() {
+        if (billGenerationLeaseMapper.insertIfAbsent(ARCHIVE_LEASE_KEY, owner, leaseSeconds) == 0
+                && billGenerationLeaseMapper.takeOverExpired(ARCHIVE_LEASE_KEY, owner, leaseSeconds) == 0) {
+            log.info("【订单归档】其他实例正在归档，跳过本轮");
+            return 0;
+        }
+        try {
+            return archiveWithLease(System.currentTimeMillis() + leaseSeconds * 1000);
+        } finally {
+            billGenerationLeaseMapper.release(ARCHIVE_LEASE_KEY, owner);
+        }
+    }
+
+    private long archiveWithLease(long leaseDeadline) {
+        LocalDateTime before = LocalDate.now().minusDays(afterDays).atStartOfDay();
+        LocalDateTime afterTime = LocalDateTime.of(1970, 1, 1, 0, 0);
+        long afterId = 0;
+        long startMillis = System.currentTimeMillis();
+        long archived = 0;
+        int batches = 0;
+        while (batches < maxBatchesPerRun) {
+            if (System.currentTimeMillis() >= leaseDeadline) {
+                log.warn("【订单归档】归档租约即将到期，停止本轮归档，批数: {}", batches);
+                break;
+            }
+            List<PaymentOrder> payments = paymentOrderMapper.selectArchiveBatch(before, afterTime, afterId, batchSize);
+            if (payments.isEmpty()) {
+                break;
+            }
+            archived += archiveBatch(before, payments);
+            batches++;
+            PaymentOrder last = payments.get(payments.size() - 1);
+            afterTime = last.getUpdateTime();
+            afterId = last.getId();
+            if (payments.size() < batchSize) {
+                break;
+            }
+            if (!pause()) {
+                break;
+            }
+        }
+        if (batches > 0) {
+            log.info("【订单归档】归档完成，before: {}, 批数: {}, 支付订单: {}, 耗时: {} ms",
+                    before, batches, archived, System.currentTimeMillis() - startMillis);
+        }
+        return archived;
+    }
+
+    /**
+     * 从归档文件中查询支付订单（慢路径）
+     *
+     * @param transactionId 交易ID
+     * @return 支付订单，未归档返回 null
+     */
+    public PaymentOrder findPaymentOrder(String transactionId) {
+        return lookup(TransType.PAY.getCode(), transactionId, "transactionId", PaymentOrder.class);
+    }
+
+    /**
+     * 支付订单是否已归档（只查询归档索引，不读取归档文件）
+     *
+     * @param transactionId 交易ID
+     * @return 已归档返回 true
+     */
+    public boolean isPaymentOrderArchived(String transactionId) {
+        return orderArchiveIndexMapper.selectByBizNo(TransType.PAY.getCode(), transactionId) != null;
+    }
+
+    /**
+     * 从归档文件中查询退款订单（慢路径）
+     *
+     * @param refundNo 退款流水号
+     * @return 退款订单，未归档返回 null
+     */
+    public RefundOrder findRefundOrder(String refundNo) {
+        return lookup(TransType.REFUND.getCode(), refundNo, "refundNo", RefundOrder.class);
+    }
+
+    /**
+     * 归档一批支付订单及其退款订单
+     *
+     * @return 删除的支付订单数
+     */
+    private int archiveBatch(LocalDateTime before, List<PaymentOrder> payments) {
+        List<String> transactionIds = new ArrayList<>(payments.size());
+        List<Long> paymentIds = new ArrayList<>(payments.size());
+        for (PaymentOrder payment : payments) {
+            transactionIds.add(payment.getTransactionId());
+            paymentIds.add(payment.getId());
+        }
+        List<RefundOrder> refunds = refundOrderMapper.selectByTransactionIds(transactionIds);
+        List<Long> refundIds = new ArrayList<>(refunds.size());
+        refunds.forEach(refund -> refundIds.add(refund.getId()));
+
+        // 1. 上传归档文件，清单最后上传，存在清单表示本批文件完整
+        LocalDateTime archiveTime = LocalDateTime.now();
+        String prefix = "archive/orders/" + archiveTime.toLocalDate() + "/"
+                + archiveTime.format(BATCH_TIME_FORMATTER) + "_" + payments.get(0).getId();
+        String paymentObject = prefix + "_payment_order.csv.gz";
+        String refundObject = prefix + "_refund_order.csv.gz";
+        List<Map<String, Object>> files = new ArrayList<>();
+        files.add(manifestFile("payment_order", paymentObject, payments.size(), writeArchive(paymentObject, payments)));
+        if (!refunds.isEmpty()) {
+            files.add(manifestFile("refund_order", refundObject, refunds.size(), writeArchive(refundObject, refunds)));
+        }
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("archiveTime", archiveTime.toString());
+        manifest.put("before", before.toString());
+        manifest.put("nullString", "\\N");
+        manifest.put("files", files);
+        ossService.uploadStream(prefix + "_manifest.json", out -> out.write(ARCHIVE_MAPPER.writeValueAsBytes(manifest)));
+
+        // 2. 写入归档索引并删除订单
+        List<OrderArchiveIndex> indexes = new ArrayList<>(payments.size() + refunds.size());
+        for (PaymentOrder payment : payments) {
+            indexes.add(buildIndex(TransType.PAY.getCode(), payment.getTransactionId(), paymentObject, archiveTime));
+        }
+        for (RefundOrder refund : refunds) {
+            indexes.add(buildIndex(TransType.REFUND.getCode(), refund.getRefundNo(), refundObject, archiveTime));
+        }
+        int[] deleted = transactionTemplate.execute(status -> {
+            orderArchiveIndexMapper.upsertBatch(indexes);
+            int deletedPayments = paymentOrderMapper.deleteArchived(paymentIds, before);
+            int deletedRefunds = refundIds.isEmpty() ? 0 : refundOrderMapper.deleteArchived(refundIds, before);
+            payments.forEach(payment -> paymentOrderCache.evict(payment.getTransactionId()));
+            refunds.forEach(refund -> refundOrderCache.evict(refund.getRefundNo()));
+            return new int[]{deletedPayments, deletedRefunds};
+        });
+        meterRegistry.counter("order.archive.rows", "table", "payment_order").increment(deleted[0]);
+        meterRegistry.counter("order.archive.rows", "table", "refund_order").increment(deleted[1]);
+        if (deleted[0] != payments.size() || deleted[1] != refunds.size()) {
+            log.warn("【订单归档】部分订单在归档期间有变更，保留在订单表中，prefix: {}, 支付订单: {}/{}, 退款订单: {}/{}",
+                    prefix, deleted[0], payments.size(), deleted[1], refunds.size());
+        }
+        log.debug("【订单归档】批次归档完成，prefix: {}, 支付订单: {}, 退款订单: {}", prefix, deleted[0], deleted[1]);
+        return deleted[0];
+    }
+
+    /**
+     * 以 gzip CSV 上传订单，第一行为字段名
+     *
+     * @return 上传的字节数
+     */
+    private long writeArchive(String objectName, List<?> orders) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType("application/gzip");
+        return ossService.uploadStream(objectName, metadata, out -> {
+            GZIPOutputStream gzipOut = new GZIPOutputStream(out, 64 * 1024);
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(gzipOut, StandardCharsets.UTF_8));
+            CSVPrinter csvPrinter = null;
+            for (Object order : orders) {
+                Map<String, Object> row = ARCHIVE_MAPPER.convertValue(order, ROW_TYPE);
+                if (csvPrinter == null) {
+                    csvPrinter = new CSVPrinter(writer, ARCHIVE_CSV_FORMAT.builder()
+                            .setHeader(row.keySet().toArray(new String[0])).build());
+                }
+                csvPrinter.printRecord(row.values());
+            }
+            writer.flush();
+            gzipOut.finish();
+        });
+    }
+
+    /**
+     * 通过归档索引找到归档文件，流式扫描到目标订单为止
+     */
+    private <T> T lookup(String orderType, String bizNo, String keyColumn, Class<T> type) {
+        OrderArchiveIndex index = orderArchiveIndexMapper.selectByBizNo(orderType, bizNo);
+        if (index == null) {
+            return null;
+        }
+        long startNanos = System.nanoTime();
+        List<T> found = new ArrayList<>(1);
+        ossService.readStream(index.getObjectName(), in -> {
+            CSVParser parser = ARCHIVE_CSV_FORMAT.builder().setHeader().setSkipHeaderRecord(true).build()
+                    .parse(new InputStreamReader(new GZIPInputStream(in), StandardCharsets.UTF_8));
+            for (CSVRecord record : parser) {
+                if (bizNo.equals(record.get(keyColumn))) {
+                    found.add(ARCHIVE_MAPPER.convertValue(record.toMap(), type));
+                    return;
+                }
+            }
+        });
+        Timer.builder("order.archive.lookup").tag("type", orderType).register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        if (found.isEmpty()) {
+            log.error("【订单归档】归档文件中未找到订单，orderType: {}, bizNo: {}, objectName: {}",
+                    orderType, bizNo, index.getObjectName());
+            return null;
+        }
+        log.info("【订单归档】从归档文件查询到订单，orderType: {}, bizNo: {}, objectName: {}",
+                orderType, bizNo, index.getObjectName());
+        return found.get(0);
+    }
+
+    private static Map<String, Object> manifestFile(String table, String objectName, int rows, long bytes) {
+        Map<String, Object> file = new LinkedHashMap<>();
+        file.put("table", table);
+        file.put("objectName", objectName);
+        file.put("rows", rows);
+        file.put("bytes", bytes);
+        return file;
+    }
+
+    private static OrderArchiveIndex buildIndex(String orderType, String bizNo, String objectName,
+                                                LocalDateTime archiveTime) {
+        OrderArchiveIndex index = new OrderArchiveIndex();
+        index.setOrderType(orderType);
+        index.setBizNo(bizNo);
+        index.setObjectName(objectName);
+        index.setArchiveTime(archiveTime);
+        return index;
+    }
+
+    /**
+     * 批次之间暂停，被中断时返回 false
+     */
+    private boolean pause() {
+        if (pauseMillis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(pauseMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
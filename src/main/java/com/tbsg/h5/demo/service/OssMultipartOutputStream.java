@@ -0,0 +1,216 @@
+package com.tbsg.h5.demo.service;
+
+import com.aliyun.oss.OSS;
+import com.aliyun.oss.model.AbortMultipartUploadRequest;
+import com.aliyun.oss.model.CompleteMultipartUploadRequest;
+import com.aliyun.oss.model.InitiateMultipartUploadRequest;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.model.PartETag;
+import com.aliyun.oss.model.UploadPartRequest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * OSS 分片上传输出流
+ *
+ * 写入的数据按 partSize 切分，每攒满一个分片就提交到线程池并行上传，
+ * 上传与数据生成同时进行，无需本地临时文件。
+ * 同时在途的分片数受 maxInFlightParts 限制，超出时写入方阻塞，内存占用上限为 partSize * (maxInFlightParts + 1)。
+ *
+ * 数据总量不足一个分片时，关闭时退化为一次普通 PutObject。
+ * 调用方必须在写入成功后调用 {@link #close()} 完成上传，写入失败时调用 {@link #abort()} 放弃上传。
+ *
+ * 只依赖 {@link OSS} 接口，可以替换为本地 OSS 替身进行测试。
+ *
+ * @author demo
+ */
+@Slf4j
+public class OssMultipartOutputStream extends OutputStream {
+
+    private final OSS ossClient;
+    private final String bucketName;
+    private final String objectName;
+    private final ObjectMetadata metadata;
+    private final int partSize;
+    private final Executor executor;
+    private final Semaphore inFlightPermits;
+
+    private final List<CompletableFuture<PartETag>> partFutures = new ArrayList<>();
+    private byte[] buffer;
+    private int position;
+    private String uploadId;
+    private int partNumber;
+    private long totalBytes;
+    private boolean closed;
+    private volatile Throwable failure;
+
+    public OssMultipartOutputStream(OSS ossClient, String bucketName, String objectName, ObjectMetadata metadata,
+                                    int partSize, int maxInFlightParts, Executor executor) {
+        this.ossClient = ossClient;
+        this.bucketName = bucketName;
+        this.objectName = objectName;
+        this.metadata = metadata;
+        this.partSize = partSize;
+        this.executor = executor;
+        this.inFlightPermits = new Semaphore(maxInFlightParts);
+        this.buffer = new byte[partSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buffer[position++] = (byte) b;
+        if (position == partSize) {
+            uploadBufferedPart();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int count = Math.min(len, partSize - position);
+            System.arraycopy(b, off, buffer, position, count);
+            position += count;
+            off += count;
+            len -= count;
+            if (position == partSize) {
+                uploadBufferedPart();
+            }
+        }
+    }
+
+    /**
+     * 完成上传：上传剩余数据并合并分片
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (uploadId == null) {
+                // 数据不足一个分片，直接普通上传
+                ossClient.putObject(bucketName, objectName, new ByteArrayInputStream(buffer, 0, position), metadata);
+                totalBytes = position;
+                return;
+            }
+            if (position > 0) {
+                uploadBufferedPart();
+            }
+            List<PartETag> partETags = new ArrayList<>();
+            for (CompletableFuture<PartETag> future : partFutures) {
+                partETags.add(future.get());
+            }
+            partETags.sort(Comparator.comparingInt(PartETag::getPartNumber));
+            ossClient.completeMultipartUpload(
+                    new CompleteMultipartUploadRequest(bucketName, objectName, uploadId, partETags));
+            log.info("OSS 分片上传完成, objectName: {}, 分片数: {}, 大小: {} bytes", objectName, partETags.size(), totalBytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abortQuietly();
+            throw new InterruptedIOException("OSS 分片上传被中断: " + objectName);
+        } catch (ExecutionException e) {
+            abortQuietly();
+            throw new IOException("OSS 分片上传失败: " + objectName, e.getCause());
+        } catch (IOException e) {
+            // 上传剩余数据时发现已有分片失败或等待被中断，closed 已置位，调用方的 abort() 不会再清理
+            abortQuietly();
+            throw e;
+        } catch (RuntimeException e) {
+            abortQuietly();
+            throw new IOException("OSS 上传失败: " + objectName, e);
+        } finally {
+            buffer = null;
+        }
+    }
+
+    /**
+     * 放弃上传：取消未完成的分片并清理 OSS 上已上传的分片
+     */
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer = null;
+        abortQuietly();
+    }
+
+    /**
+     * 已写入的总字节数
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private void uploadBufferedPart() throws IOException {
+        // 任一分片失败后立即停止，不再继续生成后续分片
+        if (failure != null) {
+            throw new IOException("OSS 分片上传失败: " + objectName, failure);
+        }
+        if (uploadId == null) {
+            uploadId = ossClient.initiateMultipartUpload(
+                    new InitiateMultipartUploadRequest(bucketName, objectName, metadata)).getUploadId();
+            log.info("OSS 分片上传开始, objectName: {}, uploadId: {}", objectName, uploadId);
+        }
+        try {
+            inFlightPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待 OSS 分片上传被中断: " + objectName);
+        }
+
+        byte[] data = buffer;
+        int length = position;
+        int number = ++partNumber;
+        totalBytes += length;
+        buffer = new byte[partSize];
+        position = 0;
+
+        CompletableFuture<PartETag> future = CompletableFuture.supplyAsync(() -> {
+            try {
+                UploadPartRequest request = new UploadPartRequest(bucketName, objectName, uploadId, number,
+                        new ByteArrayInputStream(data, 0, length), length);
+                return ossClient.uploadPart(request).getPartETag();
+            } catch (RuntimeException e) {
+                failure = e;
+                throw e;
+            } finally {
+                inFlightPermits.release();
+            }
+        }, executor);
+        partFutures.add(future);
+    }
+
+    private void abortQuietly() {
+        partFutures.forEach(future -> future.cancel(true));
+        if (uploadId == null) {
+            return;
+        }
+        try {
+            ossClient.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, objectName, uploadId));
+            log.warn("OSS 分片上传已取消, objectName: {}, uploadId: {}", objectName, uploadId);
+        } catch (Exception e) {
+            log.error("取消 OSS 分片上传失败, objectName: {}, uploadId: {}", objectName, uploadId, e);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("OSS 上传流已关闭: " + objectName);
+        }
+    }
+}
@@ -1,15 +1,26 @@
 package com.tbsg.h5.demo.service;
 
 import com.aliyun.oss.OSS;
+import com.aliyun.oss.model.ListObjectsRequest;
+import com.aliyun.oss.model.OSSObject;
+import com.aliyun.oss.model.OSSObjectSummary;
+import com.aliyun.oss.model.ObjectListing;
+import com.aliyun.oss.model.ObjectMetadata;
 import com.aliyun.oss.model.PutObjectRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * 阿里云 OSS 服务类
@@ -20,12 +31,62 @@ import java.util.Date;
 @Service
 public class OssService {
 
+    /**
+     * 预签名 URL 有效期（秒）
+     */
+    public static final long PRESIGNED_URL_EXPIRE_SECONDS = 3600;
+
     @Autowired
     private OSS ossClient;
 
     @Value("${aliyun.oss.bucketName}")
     private String bucketName;
 
+    /**
+     * 分片上传的分片大小（OSS 要求除最后一个分片外不小于 100KB）
+     */
+    @Value("${aliyun.oss.multipart.part-size:5242880}")
+    private int multipartPartSize;
+
+    /**
+     * 单个上传流同时在途的分片数
+     */
+    @Value("${aliyun.oss.multipart.parallelism:4}")
+    private int multipartParallelism;
+
+    @Autowired
+    private ThreadPoolTaskExecutor ossUploadExecutor;
+
+    /**
+     * 流式写入回调
+     */
+    @FunctionalInterface
+    public interface StreamWriter {
+
+        /**
+         * 向上传流写入内容（无需关闭 out）
+         *
+         * @param out 上传输出流
+         * @throws IOException 写入失败
+         */
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * 流式读取回调
+     */
+    @FunctionalInterface
+    public interface StreamReader {
+
+        /**
+         * 读取对象内容（无需关闭 in）
+         *
+         * @param in 对象内容输入流
+         * @throws IOException 读取失败
+         */
+        void read(InputStream in) throws IOException;
+    }
+
     /**
      * 上传文件到 OSS
      *
@@ -44,6 +105,59 @@ public class OssService {
         }
     }
 
+    /**
+     * 流式上传到 OSS
+     *
+     * writer 写入的数据边生成边以分片方式并行上传，不落本地临时文件；
+     * writer 正常返回后完成上传，抛出异常时放弃上传，OSS 上不会留下不完整的对象
+     *
+     * @param objectName OSS 中的对象名称（包含路径）
+     * @param writer     内容写入回调
+     * @return 上传的字节数
+     */
+    public long uploadStream(String objectName, StreamWriter writer) {
+        return uploadStream(objectName, null, writer);
+    }
+
+    /**
+     * 流式上传到 OSS，并指定对象元数据（Content-Type、Content-Encoding 等）
+     *
+     * @param objectName OSS 中的对象名称（包含路径）
+     * @param metadata   对象元数据，可为 null
+     * @param writer     内容写入回调
+     * @return 上传的字节数
+     */
+    public long uploadStream(String objectName, ObjectMetadata metadata, StreamWriter writer) {
+        log.info("开始流式上传文件到 OSS, bucketName: {}, objectName: {}", bucketName, objectName);
+        OssMultipartOutputStream out = new OssMultipartOutputStream(ossClient, bucketName, objectName, metadata,
+                multipartPartSize, multipartParallelism, ossUploadExecutor);
+        try {
+            writer.write(out);
+            out.close();
+            log.info("文件流式上传成功: {}, 大小: {} bytes", objectName, out.getTotalBytes());
+            return out.getTotalBytes();
+        } catch (Exception e) {
+            out.abort();
+            log.error("文件流式上传失败: {}", objectName, e);
+            throw new RuntimeException("OSS 文件上传失败", e);
+        }
+    }
+
+    /**
+     * 流式读取 OSS 对象内容
+     *
+     * @param objectName OSS 中的对象名称
+     * @param reader     内容读取回调
+     */
+    public void readStream(String objectName, StreamReader reader) {
+        try (OSSObject ossObject = ossClient.getObject(bucketName, objectName)) {
+            reader.read(ossObject.getObjectContent());
+        } catch (Exception e) {
+            log.error("文件读取失败: {}", objectName, e);
+            throw new RuntimeException("OSS 文件读取失败", e);
+        }
+    }
+
     /**
      * 检查 OSS 中是否存在指定对象
      *
@@ -59,6 +173,34 @@ public class OssService {
         }
     }
 
+    /**
+     * 列出指定前缀下的全部对象名称（分页拉取，每页 1000 个）
+     *
+     * @param prefix 对象名称前缀
+     * @return 对象名称集合
+     */
+    public Set<String> listObjectNames(String prefix) {
+        try {
+            Set<String> objectNames = new HashSet<>();
+            String marker = null;
+            ObjectListing listing;
+            do {
+                listing = ossClient.listObjects(new ListObjectsRequest(bucketName)
+                        .withPrefix(prefix)
+                        .withMarker(marker)
+                        .withMaxKeys(1000));
+                for (OSSObjectSummary summary : listing.getObjectSummaries()) {
+                    objectNames.add(summary.getKey());
+                }
+                marker = listing.getNextMarker();
+            } while (listing.isTruncated());
+            return objectNames;
+        } catch (Exception e) {
+            log.error("列出 OSS 文件失败, prefix: {}", prefix, e);
+            throw new RuntimeException("列出 OSS 文件失败", e);
+        }
+    }
+
     /**
      * 获取文件的预签名下载 URL
      *
@@ -68,7 +210,7 @@ public class OssService {
     public String getPresignedUrl(String objectName) {
         try {
             // 设置 URL 过期时间为 1 小时
-            Date expiration = new Date(System.currentTimeMillis() + 3600 * 1000);
+            Date expiration = new Date(System.currentTimeMillis() + PRESIGNED_URL_EXPIRE_SECONDS * 1000);
             URL url = ossClient.generatePresignedUrl(bucketName, objectName, expiration);
             return url.toString();
         } catch (Exception e) {
@@ -1,13 +1,13 @@
 package com.tbsg.h5.demo.service;
 
-import com.tbsg.h5.demo.entity.BillRecord;
+import com.tbsg.h5.demo.cache.BatchLoader;
+import com.tbsg.h5.demo.cache.PaymentOrderCache;
+import com.tbsg.h5.demo.cache.RefundOrderCache;
 import com.tbsg.h5.demo.entity.PaymentOrder;
 import com.tbsg.h5.demo.entity.RefundOrder;
-import com.tbsg.h5.demo.enums.TransType;
 import com.tbsg.h5.demo.constants.PaymentConstants;
 import eleme.openapi.h5.sdk.pay.enums.PayStatus;
 import eleme.openapi.h5.sdk.pay.enums.RefundStatus;
-import com.tbsg.h5.demo.mapper.BillRecordMapper;
 import com.tbsg.h5.demo.mapper.PaymentOrderMapper;
 import com.tbsg.h5.demo.mapper.RefundOrderMapper;
 import eleme.openapi.h5.sdk.pay.model.request.*;
@@ -16,11 +16,14 @@ import eleme.openapi.sdk.utils.WebUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,26 +45,39 @@ public class PaymentService {
     private RefundOrderMapper refundOrderMapper;
 
     @Autowired
-    private BillRecordMapper billRecordMapper;
+    private BillRecordWriter billRecordWriter;
 
-    @Value("${tbsg.pay.code}")
-    private String payCode;
+    @Autowired
+    private PaymentOrderCache paymentOrderCache;
+
+    @Autowired
+    private NotifyOutboxService notifyOutboxService;
+
+    @Autowired
+    private RefundOrderCache refundOrderCache;
+
+    @Autowired
+    private BatchLoader<PaymentOrder> paymentOrderBatchLoader;
+
+    @Autowired
+    private BatchLoader<RefundOrder> refundOrderBatchLoader;
+
+    @Autowired
+    private OrderArchiveService orderArchiveService;
 
     @Value("${tbsg.pay.cashierUrl}")
     private String cashierUrl;
 
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-    private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-
     /**
      * 处理支付请求
      *
      * 业务逻辑：
-     * 1. 幂等性检查：根据 transactionId 查询订单
+     * 1. 先插入：直接创建新订单（生成机构侧流水号，初始化状态为 NOTPAY），新订单只需一次 INSERT
+     * 2. 幂等性处理：插入触发 uk_transaction_id 唯一键冲突时说明订单已存在（重复或并发扫码），读取已有订单
      *    - 如果订单已存在且金额一致，直接返回已有收银台 URL（支持重复扫码）
      *    - 如果订单已存在但金额不一致，抛出异常（防止金额篡改）
      *    - 如果订单已支付成功或已关闭，抛出异常
-     * 2. 创建新订单：生成机构侧流水号，初始化状态为 NOTPAY
+     *    已在本地缓存中的订单直接走幂等逻辑，不再尝试插入；已归档的订单直接拒绝（订单表中已删除，唯一索引无法拦截）
      * 3. 构建收银台 URL：包含签名参数，用于前端跳转
      *
      * @param payRequest 支付请求（SDK 已验证签名）
@@ -73,31 +89,43 @@ public class PaymentService {
 
         log.info("【支付】开始处理支付请求，transactionId: {}, amount: {}", transactionId, payRequest.getPayAmount());
 
-        // 1. 幂等性检查
-        PaymentOrder existingOrder = checkExistingOrder(transactionId, payRequest);
-        if (existingOrder != null) {
-            return buildCashierUrl(existingOrder);
+        // 1. 重复扫码且订单已缓存时直接走幂等逻辑
+        PaymentOrder cachedOrder = paymentOrderCache.getIfPresent(transactionId);
+        if (cachedOrder != null) {
+            return buildCashierUrl(checkExistingOrder(cachedOrder, payRequest));
+        }
+
+        // 2. 已归档的订单不在订单表中，唯一索引无法拦截，需单独校验（仅开启归档时）
+        if (orderArchiveService.isEnabled() && paymentOrderCache.mightExist(transactionId)
+                && orderArchiveService.isPaymentOrderArchived(transactionId)) {
+            log.error("【支付】订单已归档，无法支付，transactionId: {}", transactionId);
+            throw new IllegalArgumentException("订单已归档，无法支付");
         }
 
-        // 2. 创建新订单
+        // 3. 先插入新订单
         PaymentOrder order = createPaymentOrder(payRequest);
+        if (order == null) {
+            // 唯一键冲突：对方事务已提交，当前读读取已有订单（快照读可能看不到对方插入的行）
+            PaymentOrder existingOrder = paymentOrderMapper.selectByTransactionIdForShare(transactionId);
+            if (existingOrder == null) {
+                throw new IllegalStateException("订单创建冲突，请重试");
+            }
+            order = checkExistingOrder(existingOrder, payRequest);
+        }
 
-        // 3. 构建收银台 URL
+        // 4. 构建收银台 URL
         return buildCashierUrl(order);
     }
 
     /**
-     * 检查订单是否已存在（幂等性检查）
+     * 校验已存在的订单（幂等性检查）
      *
-     * @param transactionId 交易ID
-     * @param payRequest 支付请求
-     * @return 已存在的订单，如果不存在返回 null
+     * @param existingOrder 已存在的订单
+     * @param payRequest    支付请求
+     * @return 可继续支付的已有订单
      */
-    private PaymentOrder checkExistingOrder(String transactionId, PayRequest payRequest) {
-        PaymentOrder existingOrder = paymentOrderMapper.selectByTransactionId(transactionId);
-        if (existingOrder == null) {
-            return null;
-        }
+    private PaymentOrder checkExistingOrder(PaymentOrder existingOrder, PayRequest payRequest) {
+        String transactionId = existingOrder.getTransactionId();
 
         // 校验金额一致性
         if (!existingOrder.getPayAmount().equals(payRequest.getPayAmount())) {
@@ -124,7 +152,7 @@ public class PaymentService {
      * 创建支付订单
      *
      * @param payRequest 支付请求
-     * @return 新创建的订单
+     * @return 新创建的订单，订单已存在（唯一键冲突）时返回 null
      */
     private PaymentOrder createPaymentOrder(PayRequest payRequest) {
         String transactionId = payRequest.getTransactionId();
@@ -147,7 +175,14 @@ public class PaymentService {
         order.setCreateTime(LocalDateTime.now());
         order.setUpdateTime(LocalDateTime.now());
 
-        paymentOrderMapper.insert(order);
+        try {
+            paymentOrderMapper.insert(order);
+        } catch (DuplicateKeyException e) {
+            // 唯一键冲突只回滚本条语句，事务可以继续使用
+            log.info("【支付】订单已存在，transactionId: {}", transactionId);
+            return null;
+        }
+        paymentOrderCache.evict(transactionId);
         log.info("【支付】订单创建成功，transactionId: {}, outTradeNo: {}", transactionId, outTradeNo);
 
         return order;
@@ -164,8 +199,11 @@ public class PaymentService {
 
         log.info("【支付查询】查询支付状态，transactionId: {}", transactionId);
 
-        // 从数据库查询订单
-        PaymentOrder order = paymentOrderMapper.selectByTransactionId(transactionId);
+        // 查询订单（优先走缓存），订单表中不存在时再查询归档
+        PaymentOrder order = getPaymentOrder(transactionId);
+        if (order == null && paymentOrderCache.mightExist(transactionId)) {
+            order = orderArchiveService.findPaymentOrder(transactionId);
+        }
         if (order == null) {
             log.error("【支付查询】订单不存在，transactionId: {}", transactionId);
             QueryPayResponse response = new QueryPayResponse();
@@ -191,11 +229,13 @@ public class PaymentService {
      * 处理退款请求
      *
      * 业务逻辑：
-     * 1. 幂等性检查：根据 refundNo 查询退款订单，如果存在则直接返回
+     * 1. 幂等性检查：根据 refundNo 查询退款订单（含已归档的退款订单），如果存在则直接返回
      * 2. 原订单校验：检查原支付订单是否存在
-     * 3. 金额校验：退款金额不能超过原支付金额（实际业务中应校验剩余可退金额）
-     * 4. 创建退款订单：生成退款流水号，保存退款记录
-     * 5. 写入账单：退款成功后记录账单
+     * 3. 金额预检：按缓存中的已退款金额快速拒绝明显超额的退款（O(1)，不做 SUM 查询）
+     * 4. 创建退款订单：生成退款流水号，保存退款记录；并发的同一 refundNo 由唯一索引拦截，返回已有结果
+     * 5. 累加已退款金额：条件 UPDATE 校验剩余可退金额，不足时回滚退款订单并返回失败
+     * 6. 写入账单：退款成功后记录账单
+     * 7. 退款通知：同一事务中写入通知发件箱，提交后异步回调原支付订单的 notifyUrl
      *
      * @param request 退款请求
      * @return 退款响应
@@ -210,14 +250,21 @@ public class PaymentService {
                 refundNo, transactionId, refundAmount);
 
         // 检查退款订单是否已存在（幂等性）
-        RefundOrder existingRefund = refundOrderMapper.selectByRefundNo(refundNo);
+        RefundOrder existingRefund = getRefundOrder(refundNo);
         if (existingRefund != null) {
             log.info("【退款】退款订单已存在，返回已有结果，refundNo: {}", refundNo);
             return buildRefundResponse(existingRefund);
         }
+        if (orderArchiveService.isEnabled() && refundOrderCache.mightExist(refundNo)) {
+            RefundOrder archivedRefund = orderArchiveService.findRefundOrder(refundNo);
+            if (archivedRefund != null) {
+                log.info("【退款】退款订单已归档，返回归档结果，refundNo: {}", refundNo);
+                return buildRefundResponse(archivedRefund);
+            }
+        }
 
         // 查询原支付订单
-        PaymentOrder paymentOrder = paymentOrderMapper.selectByTransactionId(transactionId);
+        PaymentOrder paymentOrder = getPaymentOrder(transactionId);
         if (paymentOrder == null) {
             log.error("【退款】原支付订单不存在，transactionId: {}", transactionId);
             RefundResponse response = new RefundResponse();
@@ -226,14 +273,12 @@ public class PaymentService {
             return response;
         }
 
-        // 校验退款金额
-        if (refundAmount > paymentOrder.getPayAmount()) {
-            log.error("【退款】退款金额超过支付金额，refundAmount: {}, payAmount: {}",
-                    refundAmount, paymentOrder.getPayAmount());
-            RefundResponse response = new RefundResponse();
-            response.setReturnCode(PaymentConstants.FAIL);
-            response.setReturnMsg("退款金额超过支付金额");
-            return response;
+        // 预检剩余可退金额（缓存中的已退款金额可能偏小，最终以条件更新为准）
+        int refundedAmount = paymentOrder.getRefundedAmount() == null ? 0 : paymentOrder.getRefundedAmount();
+        if (refundAmount > paymentOrder.getPayAmount() - refundedAmount) {
+            log.error("【退款】退款金额超过剩余可退金额，refundAmount: {}, payAmount: {}, refundedAmount: {}",
+                    refundAmount, paymentOrder.getPayAmount(), refundedAmount);
+            return buildRefundFailResponse();
         }
 
         // 生成机构侧退款流水号
@@ -252,11 +297,34 @@ public class PaymentService {
         refundOrder.setCreateTime(LocalDateTime.now());
         refundOrder.setUpdateTime(LocalDateTime.now());
 
-        refundOrderMapper.insert(refundOrder);
+        try {
+            refundOrderMapper.insert(refundOrder);
+        } catch (DuplicateKeyException e) {
+            // 并发请求已创建同一退款单，按幂等返回已有结果（锁定读，事务快照中看不到对方提交的行）
+            RefundOrder concurrentRefund = refundOrderMapper.selectByRefundNoForShare(refundNo);
+            if (concurrentRefund == null) {
+                throw new IllegalStateException("退款订单创建冲突，请重试");
+            }
+            log.info("【退款】退款订单已被并发请求创建，返回已有结果，refundNo: {}", refundNo);
+            return buildRefundResponse(concurrentRefund);
+        }
+        refundOrderCache.evict(refundNo);
+
+        // 条件累加已退款金额，同一订单的并发退款在此串行化
+        if (paymentOrderMapper.addRefundedAmount(transactionId, refundAmount, LocalDateTime.now()) == 0) {
+            log.error("【退款】退款金额超过剩余可退金额，回滚退款订单，refundNo: {}, refundAmount: {}",
+                    refundNo, refundAmount);
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return buildRefundFailResponse();
+        }
+        paymentOrderCache.evict(transactionId);
         log.info("【退款】退款订单创建成功，refundNo: {}, outRefundNo: {}", refundNo, outRefundNo);
 
         // 写入账单记录
-        saveToBillRecord(refundOrder, paymentOrder);
+        billRecordWriter.saveRefundRecord(refundOrder);
+
+        // 写入退款通知发件箱，事务提交后异步通知淘宝闪购
+        notifyOutboxService.enqueueRefundNotify(refundOrder, paymentOrder.getNotifyUrl());
 
         return buildRefundResponse(refundOrder);
     }
@@ -272,8 +340,11 @@ public class PaymentService {
 
         log.info("【退款查询】查询退款状态，refundNo: {}", refundNo);
 
-        // 从数据库查询退款订单
-        RefundOrder refundOrder = refundOrderMapper.selectByRefundNo(refundNo);
+        // 查询退款订单（优先走缓存），退款表中不存在时再查询归档
+        RefundOrder refundOrder = getRefundOrder(refundNo);
+        if (refundOrder == null && refundOrderCache.mightExist(refundNo)) {
+            refundOrder = orderArchiveService.findRefundOrder(refundNo);
+        }
         if (refundOrder == null) {
             log.error("【退款查询】退款订单不存在，refundNo: {}", refundNo);
             QueryRefundResponse response = new QueryRefundResponse();
@@ -299,9 +370,11 @@ public class PaymentService {
      * 关闭订单
      *
      * 业务逻辑：
-     * 1. 检查订单是否存在
-     * 2. 检查订单状态：已支付成功的订单不允许关闭
-     * 3. 更新状态：将订单状态更新为 CLOSED
+     * 1. 条件更新：未支付成功且未关闭的订单直接更新为 CLOSED（一条 UPDATE）
+     * 2. 未更新时查询订单区分原因：
+     *    - 订单不存在：返回失败
+     *    - 已支付成功：不允许关闭
+     *    - 已关闭：幂等返回成功
      *
      * @param request 关闭请求
      * @return 关闭响应
@@ -312,35 +385,34 @@ public class PaymentService {
 
         log.info("【关闭订单】处理关闭订单请求，transactionId: {}", transactionId);
 
-        // 查询订单
+        // 1. 条件更新订单状态为已关闭
+        int updated = paymentOrderMapper.updateStatusIfNotIn(transactionId, PayStatus.CLOSED.getCode(),
+                Arrays.asList(PayStatus.SUCCESS.getCode(), PayStatus.CLOSED.getCode()), null, LocalDateTime.now());
+        if (updated > 0) {
+            paymentOrderCache.evict(transactionId);
+            log.info("【关闭订单】订单关闭成功，transactionId: {}", transactionId);
+            return buildCloseResponse(PaymentConstants.SUCCESS, PaymentConstants.SUCCESS);
+        }
+
+        // 2. 未更新：查询订单当前状态
         PaymentOrder order = paymentOrderMapper.selectByTransactionId(transactionId);
         if (order == null) {
             log.error("【关闭订单】订单不存在，transactionId: {}", transactionId);
-            CloseResponse response = new CloseResponse();
-            response.setReturnCode(PaymentConstants.FAIL);
-            response.setReturnMsg("订单不存在");
-            return response;
+            return buildCloseResponse(PaymentConstants.FAIL, "订单不存在");
         }
-
-        // 检查订单状态
         if (PayStatus.SUCCESS.getCode().equals(order.getPayStatus())) {
             log.error("【关闭订单】订单已支付成功，不允许关闭，transactionId: {}", transactionId);
-            CloseResponse response = new CloseResponse();
-            response.setReturnCode(PaymentConstants.FAIL);
-            response.setReturnMsg("订单已支付成功，不允许关闭");
-            return response;
+            return buildCloseResponse(PaymentConstants.FAIL, "订单已支付成功，不允许关闭");
         }
 
-        // 更新订单状态为已关闭
-        order.setPayStatus(PayStatus.CLOSED.getCode());
-        order.setUpdateTime(LocalDateTime.now());
-        paymentOrderMapper.updateById(order);
-
-        log.info("【关闭订单】订单关闭成功，transactionId: {}", transactionId);
+        log.info("【关闭订单】订单已关闭，幂等返回成功，transactionId: {}", transactionId);
+        return buildCloseResponse(PaymentConstants.SUCCESS, PaymentConstants.SUCCESS);
+    }
 
+    private CloseResponse buildCloseResponse(String returnCode, String returnMsg) {
         CloseResponse response = new CloseResponse();
-        response.setReturnCode(PaymentConstants.SUCCESS);
-        response.setReturnMsg(PaymentConstants.SUCCESS);
+        response.setReturnCode(returnCode);
+        response.setReturnMsg(returnMsg);
         return response;
     }
 
@@ -348,107 +420,88 @@ public class PaymentService {
      * 更新订单状态（支付回调时调用）
      *
      * 业务逻辑：
-     * 1. 幂等性检查：如果订单已是 SUCCESS 状态，则忽略本次更新
-     * 2. 状态更新：更新订单状态、成功时间
-     * 3. 账单记录：如果支付成功，将订单写入账单记录表
+     * 1. 条件更新：只有当前状态不是 SUCCESS 时才更新状态和成功时间（一条 UPDATE，只写变化的列），
+     *    SUCCESS 可以覆盖 CLOSED，已成功的订单不会被重复处理
+     * 2. 未更新时说明订单已是 SUCCESS 状态（幂等），返回数据库中的订单
+     * 3. 账单记录：如果支付成功，将订单写入账单记录表（write-behind 模式下事务提交后批量写入）
+     * 4. 回调通知：如果支付成功，在同一事务中写入通知发件箱，事务提交后异步通知淘宝闪购
      *
      * @param transactionId 交易ID
      * @param status        支付状态
+     * @param notifyUrl     淘宝闪购回调地址
      * @return 更新后的订单对象
      */
     @Transactional(rollbackFor = Exception.class)
-    public PaymentOrder updateOrderStatus(String transactionId, String status) {
+    public PaymentOrder updateOrderStatus(String transactionId, String status, String notifyUrl) {
         log.info("【更新订单状态】收到回调更新请求，transactionId: {}, status: {}", transactionId, status);
 
-        PaymentOrder order = paymentOrderMapper.selectByTransactionId(transactionId);
+        // 订单的金额、流水号等字段创建后不再变化，可以从缓存读取
+        PaymentOrder order = getPaymentOrder(transactionId);
+        if (order == null) {
+            order = paymentOrderMapper.selectByTransactionId(transactionId);
+        }
         if (order == null) {
             log.error("【更新订单状态】订单不存在，transactionId: {}", transactionId);
             throw new IllegalArgumentException("订单不存在");
         }
 
-        // 幂等性检查：如果订单已经是成功状态，不再重复处理
-        if (PayStatus.SUCCESS.getCode().equals(order.getPayStatus())) {
+        // outTradeNo 在创建订单时已生成，此处不应修改，防止数据不一致
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime successTime = PayStatus.SUCCESS.getCode().equals(status) ? now : null;
+        int updated = paymentOrderMapper.updateStatusIfNotIn(transactionId, status,
+                Collections.singletonList(PayStatus.SUCCESS.getCode()), successTime, now);
+        if (updated == 0) {
+            // 幂等性检查：订单已经是成功状态，不再重复处理（通知已存在时发件箱会忽略）
             log.info("【更新订单状态】订单已是成功状态，跳过更新，transactionId: {}", transactionId);
-            return order;
+            PaymentOrder existingOrder = paymentOrderMapper.selectByTransactionId(transactionId);
+            if (existingOrder == null) {
+                // 读取缓存与条件更新之间订单被归档/删除
+                log.error("【更新订单状态】订单不存在，transactionId: {}", transactionId);
+                throw new IllegalArgumentException("订单不存在");
+            }
+            if (PayStatus.SUCCESS.getCode().equals(existingOrder.getPayStatus())) {
+                notifyOutboxService.enqueuePayNotify(existingOrder, notifyUrl);
+            }
+            return existingOrder;
         }
+        paymentOrderCache.evict(transactionId);
 
         order.setPayStatus(status);
-        // outTradeNo 在创建订单时已生成，此处不应修改，防止数据不一致
-        if (PayStatus.SUCCESS.getCode().equals(status)) {
-            order.setSuccessTime(LocalDateTime.now());
+        if (successTime != null) {
+            order.setSuccessTime(successTime);
         }
-        order.setUpdateTime(LocalDateTime.now());
-
-        paymentOrderMapper.updateById(order);
+        order.setUpdateTime(now);
         log.info("【更新订单状态】订单状态更新成功，transactionId: {}", transactionId);
 
         // 如果支付成功，写入账单记录
-        if (PayStatus.SUCCESS.getCode().equals(status)) {
-            saveToBillRecord(order);
+        if (successTime != null) {
+            billRecordWriter.savePayRecord(order);
+            notifyOutboxService.enqueuePayNotify(order, notifyUrl);
         }
 
         return order;
     }
 
     /**
-     * 保存支付订单到账单记录表
+     * 查询支付订单（读缓存，未命中时经批量合并查询数据库）
      *
-     * @param order 支付订单
+     * 只用于只读场景；需要基于订单当前状态做更新时直接查询数据库
+     *
+     * @param transactionId 交易ID
+     * @return 支付订单，不存在返回 null
      */
-    private void saveToBillRecord(PaymentOrder order) {
-        BillRecord billRecord = new BillRecord();
-        billRecord.setBillDate(order.getSuccessTime().format(DATE_FORMATTER));
-        billRecord.setPayCode(payCode);
-        billRecord.setTransType(TransType.PAY.getCode());
-        billRecord.setRequestTime(order.getRequestTime().format(DATETIME_FORMATTER));
-        billRecord.setSuccessTime(order.getSuccessTime().format(DATETIME_FORMATTER));
-        billRecord.setTransactionId(order.getTransactionId());
-        billRecord.setOutTransactionId(order.getOutTradeNo());
-        billRecord.setTransStatus("S");
-        billRecord.setTransAmount(order.getPayAmount());
-        billRecord.setUserTransRealAmount(order.getPayAmount());
-        billRecord.setSettleAmount(0);
-        billRecord.setMarketingAmount(0);
-        billRecord.setMarketingType("");
-        billRecord.setMarketingFee(0);
-        billRecord.setOriginTransactionId("");
-        billRecord.setRate(0);
-        billRecord.setFee(0);
-        billRecord.setCreateTime(LocalDateTime.now());
-
-        billRecordMapper.insert(billRecord);
-        log.info("【账单记录】支付订单写入账单成功，transactionId: {}", order.getTransactionId());
+    private PaymentOrder getPaymentOrder(String transactionId) {
+        return paymentOrderCache.get(transactionId, paymentOrderBatchLoader::load);
     }
 
     /**
-     * 保存退款订单到账单记录表
+     * 查询退款订单（读缓存，未命中时经批量合并查询数据库）
      *
-     * @param refundOrder   退款订单
-     * @param paymentOrder  原支付订单
+     * @param refundNo 退款流水号
+     * @return 退款订单，不存在返回 null
      */
-    private void saveToBillRecord(RefundOrder refundOrder, PaymentOrder paymentOrder) {
-        BillRecord billRecord = new BillRecord();
-        billRecord.setBillDate(refundOrder.getSuccessTime().format(DATE_FORMATTER));
-        billRecord.setPayCode(payCode);
-        billRecord.setTransType(TransType.REFUND.getCode());
-        billRecord.setRequestTime(refundOrder.getRequestTime().format(DATETIME_FORMATTER));
-        billRecord.setSuccessTime(refundOrder.getSuccessTime().format(DATETIME_FORMATTER));
-        billRecord.setTransactionId(refundOrder.getRefundNo());
-        billRecord.setOutTransactionId(refundOrder.getOutRefundNo());
-        billRecord.setTransStatus("S");
-        billRecord.setTransAmount(refundOrder.getRefundAmount());
-        billRecord.setUserTransRealAmount(refundOrder.getRefundAmount());
-        billRecord.setSettleAmount(0);
-        billRecord.setMarketingAmount(0);
-        billRecord.setMarketingType("");
-        billRecord.setMarketingFee(0);
-        billRecord.setOriginTransactionId(paymentOrder.getTransactionId());
-        billRecord.setRate(0);
-        billRecord.setFee(0);
-        billRecord.setCreateTime(LocalDateTime.now());
-
-        billRecordMapper.insert(billRecord);
-        log.info("【账单记录】退款订单写入账单成功，refundNo: {}", refundOrder.getRefundNo());
+    private RefundOrder getRefundOrder(String refundNo) {
+        return refundOrderCache.get(refundNo, refundOrderBatchLoader::load);
     }
 
     /**
@@ -493,6 +546,18 @@ public class PaymentService {
         return response;
     }
 
+    /**
+     * 构建剩余可退金额不足的退款响应
+     *
+     * @return 退款响应
+     */
+    private RefundResponse buildRefundFailResponse() {
+        RefundResponse response = new RefundResponse();
+        response.setReturnCode(PaymentConstants.FAIL);
+        response.setReturnMsg("退款金额超过剩余可退金额");
+        return response;
+    }
+
     /**
      * 生成机构侧支付流水号
      *
@@ -0,0 +1,161 @@
+package com.tbsg.h5.demo.service;
+
+import com.tbsg.h5.demo.controller.TbsgCallbackController;
+import com.tbsg.h5.demo.enums.CallbackResult;
+import eleme.openapi.h5.sdk.pay.model.request.PayCallbackRequest;
+import eleme.openapi.h5.sdk.pay.model.request.RefundCallbackRequest;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 基于 SDK payCallback/refundCallback 的回调传输层
+ *
+ * SDK 内部使用 JDK HttpURLConnection 发送回调（不支持 HTTP/2），连接复用依赖 JDK 的 keep-alive 缓存：
+ * 1. keep-alive 缓存的空闲连接数（http.maxConnections，默认 5）和默认连接/读取超时
+ *    （sun.net.client.defaultConnectTimeout/defaultReadTimeout，默认不超时）只在 JDK 相关类首次加载时读取一次，
+ *    运行期调用 System.setProperty 不一定生效，需在启动命令中以 -D 参数指定；启动时打印实际值，未指定时告警
+ * 2. 按回调域名限制并发请求数（不超过 http.maxConnections），超出的请求等待 acquire-timeout-millis 后放弃，
+ *    返回 NOT_SENT，发件箱释放认领、不计入发送次数；单个域名响应慢时最多占用 max-connections-per-host 个发送线程，
+ *    因此该值应小于 tbsg.notify.pool-size，其余线程仍可发送其他域名的通知
+ *
+ * 指标（tag host）：notify.http.request-请求耗时（tag result=success/fail，带 P50/P95/P99），
+ * notify.http.active-进行中的请求数，notify.http.saturated-因并发已满放弃的请求数
+ *
+ * @author demo
+ */
+@Slf4j
+@Component
+public class SdkCallbackTransport implements CallbackTransport {
+
+    /**
+     * 未指定 http.maxConnections 时 JDK keep-alive 缓存的默认空闲连接数
+     */
+    private static final int DEFAULT_JDK_MAX_CONNECTIONS = 5;
+
+    /**
+     * 回调控制器依赖 PaymentService，延迟注入避免循环依赖
+     */
+    @Lazy
+    @Autowired
+    private TbsgCallbackController tbsgCallbackController;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 每个回调域名的最大并发请求数，不应超过 http.maxConnections，且应小于 tbsg.notify.pool-size
+     */
+    @Value("${tbsg.notify.http.max-connections-per-host:4}")
+    private int maxConnectionsPerHost;
+
+    @Value("${tbsg.notify.pool-size:8}")
+    private int notifyPoolSize;
+
+    /**
+     * 等待并发许可的最长时间（毫秒）
+     */
+    @Value("${tbsg.notify.http.acquire-timeout-millis:1000}")
+    private long acquireTimeoutMillis;
+
+    private final Map<String, HostPool> hostPools = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        String maxConnections = System.getProperty("http.maxConnections");
+        String connectTimeout = System.getProperty("sun.net.client.defaultConnectTimeout");
+        String readTimeout = System.getProperty("sun.net.client.defaultReadTimeout");
+        log.info("【回调传输】初始化完成，keepAlive: {}, maxConnections: {}, connectTimeout: {}, readTimeout: {}, "
+                        + "maxConnectionsPerHost: {}, notifyPoolSize: {}",
+                System.getProperty("http.keepAlive", "true"), maxConnections, connectTimeout, readTimeout,
+                maxConnectionsPerHost, notifyPoolSize);
+        if (connectTimeout == null || readTimeout == null) {
+            log.warn("【回调传输】未通过 -Dsun.net.client.defaultConnectTimeout/-Dsun.net.client.defaultReadTimeout 设置默认超时，"
+                    + "SDK 未显式设置超时时回调请求可能一直阻塞发送线程");
+        }
+        if (Integer.getInteger("http.maxConnections", DEFAULT_JDK_MAX_CONNECTIONS) < maxConnectionsPerHost) {
+            log.warn("【回调传输】http.maxConnections 小于 max-connections-per-host: {}，超出缓存上限的连接用完即关，"
+                    + "请通过 -Dhttp.maxConnections 调整", maxConnectionsPerHost);
+        }
+        if (maxConnectionsPerHost >= notifyPoolSize) {
+            log.warn("【回调传输】max-connections-per-host: {} 不小于 notify pool-size: {}，单个域名的并发限制不会生效",
+                    maxConnectionsPerHost, notifyPoolSize);
+        }
+    }
+
+    @Override
+    public CallbackResult sendPayCallback(PayCallbackRequest request, String notifyUrl) {
+        return execute(notifyUrl, () -> tbsgCallbackController.notifyPayCallback(request, notifyUrl));
+    }
+
+    @Override
+    public CallbackResult sendRefundCallback(RefundCallbackRequest request, String notifyUrl) {
+        return execute(notifyUrl, () -> tbsgCallbackController.notifyRefundCallback(request, notifyUrl));
+    }
+
+    private CallbackResult execute(String notifyUrl, BooleanSupplier call) {
+        HostPool pool = hostPools.computeIfAbsent(hostOf(notifyUrl), HostPool::new);
+        try {
+            if (!pool.permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                meterRegistry.counter("notify.http.saturated", "host", pool.host).increment();
+                log.warn("【回调传输】回调域名并发已满，稍后重试，host: {}, maxConnections: {}", pool.host, maxConnectionsPerHost);
+                return CallbackResult.NOT_SENT;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CallbackResult.NOT_SENT;
+        }
+
+        long startNanos = System.nanoTime();
+        boolean result = false;
+        try {
+            result = call.getAsBoolean();
+            return result ? CallbackResult.DELIVERED : CallbackResult.FAILED;
+        } finally {
+            pool.permits.release();
+            Timer.builder("notify.http.request").tags("host", pool.host, "result", result ? "success" : "fail")
+                    .publishPercentiles(0.5, 0.95, 0.99).register(meterRegistry)
+                    .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static String hostOf(String notifyUrl) {
+        try {
+            URI uri = URI.create(notifyUrl);
+            if (uri.getHost() != null) {
+                return uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+            }
+        } catch (IllegalArgumentException e) {
+            log.warn("【回调传输】回调地址格式错误，notifyUrl: {}", notifyUrl);
+        }
+        return "unknown";
+    }
+
+    /**
+     * 单个回调域名的并发许可
+     */
+    private class HostPool {
+        private final String host;
+        private final Semaphore permits;
+
+        HostPool(String host) {
+            this.host = host;
+            this.permits = new Semaphore(Math.max(1, maxConnectionsPerHost));
+            Gauge.builder("notify.http.active", permits, p -> Math.max(1, maxConnectionsPerHost) - p.availablePermits())
+                    .tag("host", host).register(meterRegistry);
+        }
+    }
+}
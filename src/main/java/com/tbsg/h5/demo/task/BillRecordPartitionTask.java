@@ -0,0 +1,47 @@
+package com.tbsg.h5.demo.task;
+
+import com.tbsg.h5.demo.service.BillRecordPartitionService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 账单记录分区维护定时任务
+ *
+ * @author demo
+ */
+@Slf4j
+@Component
+public class BillRecordPartitionTask {
+
+    @Autowired
+    private BillRecordPartitionService billRecordPartitionService;
+
+    /**
+     * 启动完成后立即维护一次，保证当月分区已存在
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rotateOnStartup() {
+        rotatePartitions();
+    }
+
+    /**
+     * 每天预建未来的月分区并删除过期分区
+     *
+     * cron: 默认 0 10 3 * * ? (每天 03:10:00 执行，早于 04:00 的每日出账)
+     */
+    @Scheduled(cron = "${tbsg.bill.partition.cron:0 10 3 * * ?}")
+    public void rotatePartitions() {
+        if (!billRecordPartitionService.isEnabled()) {
+            return;
+        }
+        try {
+            billRecordPartitionService.rotate();
+        } catch (Exception e) {
+            log.error("【定时任务】账单记录分区维护失败，错误信息: {}", e.getMessage(), e);
+        }
+    }
+}
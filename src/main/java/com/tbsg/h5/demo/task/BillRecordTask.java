@@ -0,0 +1,35 @@
+package com.tbsg.h5.demo.task;
+
+import com.tbsg.h5.demo.service.BillRecordWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 账单记录对账定时任务
+ *
+ * @author demo
+ */
+@Slf4j
+@Component
+public class BillRecordTask {
+
+    @Autowired
+    private BillRecordWriter billRecordWriter;
+
+    /**
+     * 异步批量写入模式下，定期补写节点宕机或队列已满时丢失的账单记录
+     */
+    @Scheduled(fixedDelayString = "${tbsg.bill.record.reconcile-interval-millis:300000}")
+    public void reconcileBillRecords() {
+        if (!billRecordWriter.isEnabled() || !billRecordWriter.isWriteBehind()) {
+            return;
+        }
+        try {
+            billRecordWriter.reconcile();
+        } catch (Exception e) {
+            log.error("【定时任务】账单记录对账补写失败，错误信息: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.tbsg.h5.demo.task;
+
+import com.tbsg.h5.demo.service.BillSegmentService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 账单增量分段定时任务
+ *
+ * @author demo
+ */
+@Slf4j
+@Component
+public class BillSegmentTask {
+
+    @Autowired
+    private BillSegmentService billSegmentService;
+
+    /**
+     * 定期把新写入的账单记录导出为增量分段，把凌晨出账的数据库和 IO 压力分摊到全天
+     */
+    @Scheduled(fixedDelayString = "${tbsg.bill.segment.interval-millis:60000}")
+    public void exportSegments() {
+        if (!billSegmentService.isEnabled()) {
+            return;
+        }
+        try {
+            billSegmentService.exportPendingSegments();
+        } catch (Exception e) {
+            log.error("【定时任务】账单增量分段导出失败，错误信息: {}", e.getMessage(), e);
+        }
+    }
+}
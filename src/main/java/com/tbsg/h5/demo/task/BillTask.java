@@ -1,13 +1,12 @@
 package com.tbsg.h5.demo.task;
 
-import com.tbsg.h5.demo.service.BillService;
+import com.tbsg.h5.demo.service.BillCatchUpService;
+import com.tbsg.h5.demo.service.BillJobService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
-import java.nio.file.Files;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 
@@ -21,11 +20,14 @@ import java.time.format.DateTimeFormatter;
 public class BillTask {
 
     @Autowired
-    private BillService billService;
+    private BillJobService billJobService;
+
+    @Autowired
+    private BillCatchUpService billCatchUpService;
 
     /**
      * 每天凌晨 4 点生成前一天的账单
-     * 保存到本地 bills 目录下
+     * 通过账单任务队列异步生成并上传到 OSS，任务状态记录在 bill_job 表
      *
      * cron: 0 0 4 * * ? (每天 04:00:00 执行)
      */
@@ -38,13 +40,28 @@ public class BillTask {
         log.info("【定时任务】开始生成账单，目标日期: {}", billDate);
 
         try {
-            // 1. 生成账单并上传到 OSS
-            billService.generateAndUploadBill(billDate);
+            // 1. 提交账单生成任务
+            billJobService.submit(billDate, BillJobService.TRIGGER_SCHEDULE);
+
+            log.info("【定时任务】账单生成任务已提交。日期: {}", billDate);
 
-            log.info("【定时任务】账单生成并上传成功。日期: {}", billDate);
+        } catch (Exception e) {
+            log.error("【定时任务】账单生成任务提交失败。日期: {}, 错误信息: {}", billDate, e.getMessage(), e);
+        }
+    }
 
+    /**
+     * 补生成 T-30 窗口内缺失的账单
+     * 覆盖每日账单生成失败或服务停机期间漏掉的账单日，避免平台下载时才临时生成
+     *
+     * cron: 默认 0 30 * * * ? (每小时 30 分执行)
+     */
+    @Scheduled(cron = "${tbsg.bill.catch-up.cron:0 30 * * * ?}")
+    public void catchUpBills() {
+        try {
+            billCatchUpService.catchUp();
         } catch (Exception e) {
-            log.error("【定时任务】账单生成失败。日期: {}, 错误信息: {}", billDate, e.getMessage(), e);
+            log.error("【定时任务】账单补生成失败，错误信息: {}", e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,32 @@
+package com.tbsg.h5.demo.task;
+
+import com.tbsg.h5.demo.service.NotifyOutboxService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 回调通知定时任务
+ *
+ * @author demo
+ */
+@Slf4j
+@Component
+public class NotifyTask {
+
+    @Autowired
+    private NotifyOutboxService notifyOutboxService;
+
+    /**
+     * 定期扫描发件箱中到期的通知（失败重试、重启前未发送、线程池满未投递的通知）
+     */
+    @Scheduled(fixedDelayString = "${tbsg.notify.poll-interval-millis:1000}")
+    public void dispatchDueNotifies() {
+        try {
+            notifyOutboxService.dispatchDue();
+        } catch (Exception e) {
+            log.error("【定时任务】回调通知扫描失败，错误信息: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.tbsg.h5.demo.task;
+
+import com.tbsg.h5.demo.service.OrderArchiveService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * 订单归档定时任务
+ *
+ * @author demo
+ */
+@Slf4j
+@Component
+public class OrderArchiveTask {
+
+    @Autowired
+    private OrderArchiveService orderArchiveService;
+
+    @Autowired
+    private ThreadPoolTaskExecutor orderArchiveExecutor;
+
+    /**
+     * 每天把超过归档期限的终态订单归档到 OSS 并从订单表删除
+     *
+     * 归档在 orderArchiveExecutor 上执行，不阻塞其他定时任务
+     *
+     * cron: 默认 0 30 2 * * ? (每天 02:30:00 执行，避开 04:00 的每日出账)
+     */
+    @Scheduled(cron = "${tbsg.archive.cron:0 30 2 * * ?}")
+    public void archiveOrders() {
+        if (!orderArchiveService.isEnabled()) {
+            return;
+        }
+        try {
+            orderArchiveExecutor.execute(this::runArchive);
+        } catch (TaskRejectedException e) {
+            log.warn("【定时任务】上一轮订单归档尚未结束，跳过本次触发");
+        }
+    }
+
+    private void runArchive() {
+        try {
+            orderArchiveService.archive();
+        } catch (Exception e) {
+            log.error("【定时任务】订单归档失败，错误信息: {}", e.getMessage(), e);
+        }
+    }
+}
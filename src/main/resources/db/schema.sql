@@ -8,6 +8,8 @@ USE tbsg_h5_demo;
 
 -- =====================================================
 -- 1. 支付订单表 (payment_order)
+-- 说明：不做分区。MySQL 分区表的每个唯一索引都必须包含分区列，按时间分区后 uk_transaction_id
+--      只能保证同一分区内唯一，而支付幂等依赖 transaction_id 全局唯一
 -- =====================================================
 DROP TABLE IF EXISTS `payment_order`;
 CREATE TABLE `payment_order` (
@@ -15,6 +17,7 @@ CREATE TABLE `payment_order` (
     `transaction_id` VARCHAR(64) NOT NULL COMMENT '淘宝闪购支付流水号',
     `out_trade_no` VARCHAR(64) DEFAULT NULL COMMENT '三方支付交易号（机构侧生成）',
     `pay_amount` INT(11) NOT NULL COMMENT '支付金额（单位：分）',
+    `refunded_amount` INT(11) NOT NULL DEFAULT 0 COMMENT '已退款金额（单位：分），与退款单在同一事务中条件累加',
     `subject` VARCHAR(256) DEFAULT NULL COMMENT '订单主题',
     `body` VARCHAR(512) DEFAULT NULL COMMENT '订单详情',
     `uid` VARCHAR(64) DEFAULT NULL COMMENT '用户ID',
@@ -28,11 +31,14 @@ CREATE TABLE `payment_order` (
     PRIMARY KEY (`id`),
     UNIQUE KEY `uk_transaction_id` (`transaction_id`),
     KEY `idx_pay_status` (`pay_status`),
-    KEY `idx_create_time` (`create_time`)
+    KEY `idx_create_time` (`create_time`),
+    KEY `idx_update_time` (`update_time`, `id`),
+    KEY `idx_success_time` (`success_time`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='支付订单表';
 
 -- =====================================================
 -- 2. 退款订单表 (refund_order)
+-- 说明：不做分区，原因同 payment_order（退款幂等依赖 uk_refund_no 全局唯一）
 -- =====================================================
 DROP TABLE IF EXISTS `refund_order`;
 CREATE TABLE `refund_order` (
@@ -51,21 +57,26 @@ CREATE TABLE `refund_order` (
     UNIQUE KEY `uk_refund_no` (`refund_no`),
     KEY `idx_transaction_id` (`transaction_id`),
     KEY `idx_refund_status` (`refund_status`),
-    KEY `idx_create_time` (`create_time`)
+    KEY `idx_create_time` (`create_time`),
+    KEY `idx_update_time` (`update_time`),
+    KEY `idx_success_time` (`success_time`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='退款订单表';
 
 -- =====================================================
 -- 3. 账单记录表 (bill_record)
 -- 说明：严格按照账单文档的 18 个字段设计
+--      按 bill_date 月分区，由 BillRecordPartitionTask 从 p_max 拆出未来的月分区并删除过期分区。
+--      分区表的主键和唯一索引必须包含分区列，因此主键为 (id, bill_date)，唯一索引追加 bill_date；
+--      bill_date 由交易成功时间确定，同一笔交易的 bill_date 不变，唯一性与 (transaction_id, trans_type) 相同
 -- =====================================================
 DROP TABLE IF EXISTS `bill_record`;
 CREATE TABLE `bill_record` (
     `id` BIGINT(20) NOT NULL AUTO_INCREMENT COMMENT '主键ID',
-    `bill_date` VARCHAR(10) NOT NULL COMMENT '账单日期（yyyy-MM-dd）',
+    `bill_date` DATE NOT NULL COMMENT '账单日期',
     `pay_code` VARCHAR(64) NOT NULL COMMENT '支付code',
     `trans_type` VARCHAR(10) NOT NULL COMMENT '交易类型：pay-支付, refund-退款',
-    `request_time` VARCHAR(19) DEFAULT NULL COMMENT '请求时间（yyyy-MM-dd HH:mm:ss）',
-    `success_time` VARCHAR(19) DEFAULT NULL COMMENT '成功时间（yyyy-MM-dd HH:mm:ss）',
+    `request_time` DATETIME DEFAULT NULL COMMENT '请求时间',
+    `success_time` DATETIME DEFAULT NULL COMMENT '成功时间',
     `transaction_id` VARCHAR(64) NOT NULL COMMENT '商户流水号（支付传淘宝闪购支付流水号，退款传淘宝闪购退款流水号）',
     `out_transaction_id` VARCHAR(64) DEFAULT NULL COMMENT '渠道流水号（支付传机构支付流水号，退款传机构退款流水号）',
     `trans_status` VARCHAR(10) NOT NULL DEFAULT 'S' COMMENT '交易状态（S=成功）',
@@ -79,21 +90,142 @@ CREATE TABLE `bill_record` (
     `rate` INT(11) NOT NULL DEFAULT 0 COMMENT '税率（单位：分，默认传0）',
     `fee` INT(11) NOT NULL DEFAULT 0 COMMENT '交易手续费（单位：分，默认传0）',
     `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    PRIMARY KEY (`id`, `bill_date`),
+    UNIQUE KEY `uk_transaction_id_trans_type` (`transaction_id`, `trans_type`, `bill_date`),
+    KEY `idx_bill_date_trans_type_create_time` (`bill_date`, `trans_type`, `create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='账单记录表（用于生成CSV）'
+PARTITION BY RANGE COLUMNS (`bill_date`) (
+    PARTITION `p_max` VALUES LESS THAN (MAXVALUE)
+);
+
+-- =====================================================
+-- 4. 账单生成租约表 (bill_generation_lease)
+-- 说明：多实例部署时保证同一账单日只有一个实例在生成账单；
+--      bill_date 也作为其他单实例任务的租约键（订单归档使用 archive）
+-- =====================================================
+DROP TABLE IF EXISTS `bill_generation_lease`;
+CREATE TABLE `bill_generation_lease` (
+    `bill_date` VARCHAR(10) NOT NULL COMMENT '账单日期（yyyy-MM-dd）',
+    `owner` VARCHAR(128) NOT NULL COMMENT '持有租约的实例标识',
+    `lease_until` DATETIME NOT NULL COMMENT '租约到期时间',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    PRIMARY KEY (`bill_date`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='账单生成租约表';
+
+-- =====================================================
+-- 5. 账单生成任务表 (bill_job)
+-- 说明：记录异步账单生成任务的状态、行数与耗时
+-- =====================================================
+DROP TABLE IF EXISTS `bill_job`;
+CREATE TABLE `bill_job` (
+    `id` BIGINT(20) NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+    `bill_date` VARCHAR(10) NOT NULL COMMENT '账单日期（yyyy-MM-dd）',
+    `trigger_source` VARCHAR(20) NOT NULL COMMENT '触发来源：DOWNLOAD-下载接口, SCHEDULE-定时任务, CATCH_UP-补生成',
+    `status` VARCHAR(20) NOT NULL DEFAULT 'QUEUED' COMMENT '任务状态：QUEUED-排队中, RUNNING-执行中, DONE-已完成, FAILED-失败',
+    `row_count` BIGINT(20) DEFAULT NULL COMMENT '写入的账单行数',
+    `duration_ms` BIGINT(20) DEFAULT NULL COMMENT '执行耗时（毫秒）',
+    `error_msg` VARCHAR(512) DEFAULT NULL COMMENT '失败原因',
+    `start_time` DATETIME DEFAULT NULL COMMENT '开始执行时间',
+    `finish_time` DATETIME DEFAULT NULL COMMENT '结束时间',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     PRIMARY KEY (`id`),
     KEY `idx_bill_date` (`bill_date`),
-    KEY `idx_transaction_id` (`transaction_id`),
-    KEY `idx_trans_type` (`trans_type`)
-) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='账单记录表（用于生成CSV）';
+    KEY `idx_status` (`status`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='账单生成任务表';
+
+-- =====================================================
+-- 6. 账单增量分段表 (bill_segment)
+-- 说明：日间持续导出的账单 CSV 分段（存放在 OSS），每日出账时直接拼接
+-- =====================================================
+DROP TABLE IF EXISTS `bill_segment`;
+CREATE TABLE `bill_segment` (
+    `id` BIGINT(20) NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+    `bill_date` VARCHAR(10) NOT NULL COMMENT '账单日期（yyyy-MM-dd）',
+    `trans_type` VARCHAR(10) NOT NULL COMMENT '交易类型：pay-支付, refund-退款',
+    `first_id` BIGINT(20) NOT NULL COMMENT '分段内第一条 bill_record.id',
+    `last_id` BIGINT(20) NOT NULL COMMENT '分段内最后一条 bill_record.id',
+    `row_count` INT(11) NOT NULL COMMENT '分段行数',
+    `object_name` VARCHAR(256) NOT NULL COMMENT 'OSS 对象名称',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    PRIMARY KEY (`id`),
+    KEY `idx_bill_date` (`bill_date`, `trans_type`, `first_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='账单增量分段表';
+
+-- =====================================================
+-- 7. 账单导出检查点表 (bill_export_checkpoint)
+-- 说明：记录已导出到分段的最大 bill_record.id
+-- =====================================================
+DROP TABLE IF EXISTS `bill_export_checkpoint`;
+CREATE TABLE `bill_export_checkpoint` (
+    `name` VARCHAR(64) NOT NULL COMMENT '检查点名称',
+    `last_id` BIGINT(20) NOT NULL DEFAULT 0 COMMENT '已导出的最大 bill_record.id',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`name`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='账单导出检查点表';
+
+-- =====================================================
+-- 8. 回调通知发件箱表 (notify_outbox)
+-- 说明：与订单状态在同一事务中写入，由后台异步发送并按退避间隔重试
+-- =====================================================
+DROP TABLE IF EXISTS `notify_outbox`;
+CREATE TABLE `notify_outbox` (
+    `id` BIGINT(20) NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+    `notify_type` VARCHAR(20) NOT NULL COMMENT '通知类型：PAY-支付结果通知, REFUND-退款结果通知',
+    `biz_no` VARCHAR(64) NOT NULL COMMENT '业务单号（支付通知为 transaction_id，退款通知为 refund_no）',
+    `notify_url` VARCHAR(512) NOT NULL COMMENT '淘宝闪购回调地址',
+    `status` VARCHAR(20) NOT NULL DEFAULT 'PENDING' COMMENT '通知状态：PENDING-待发送, SUCCESS-已送达, DEAD-已放弃（超过最大发送次数）',
+    `attempts` INT(11) NOT NULL DEFAULT 0 COMMENT '已发送次数',
+    `next_retry_time` DATETIME NOT NULL COMMENT '下次发送时间',
+    `last_error` VARCHAR(512) DEFAULT NULL COMMENT '最近一次失败原因',
+    `success_time` DATETIME DEFAULT NULL COMMENT '送达时间',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_notify_type_biz_no` (`notify_type`, `biz_no`),
+    KEY `idx_status_next_retry_time` (`status`, `next_retry_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='回调通知发件箱表';
+
+-- =====================================================
+-- 9. 订单归档索引表 (order_archive_index)
+-- 说明：超过归档期限的支付订单及其退款订单以 gzip CSV 归档到 OSS 后从订单表删除，
+--      本表记录每个已归档单号所在的归档文件，供查询接口的慢路径读取
+-- =====================================================
+DROP TABLE IF EXISTS `order_archive_index`;
+CREATE TABLE `order_archive_index` (
+    `id` BIGINT(20) NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+    `order_type` VARCHAR(10) NOT NULL COMMENT '订单类型：pay-支付订单, refund-退款订单',
+    `biz_no` VARCHAR(64) NOT NULL COMMENT '业务单号（支付订单为 transaction_id，退款订单为 refund_no）',
+    `object_name` VARCHAR(256) NOT NULL COMMENT '归档文件的 OSS 对象名称',
+    `archive_time` DATETIME NOT NULL COMMENT '归档时间',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_order_type_biz_no` (`order_type`, `biz_no`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='订单归档索引表';
+
+-- =====================================================
+-- 10. 缓存失效日志表 (cache_invalidation)
+-- 说明：多实例部署（tbsg.cache.invalidation.mode=db-polling）时，订单变更在同一事务中写入本表，
+--      各实例按自增 ID 轮询并失效本地缓存；超过 retention-minutes 的记录定期清理
+-- =====================================================
+DROP TABLE IF EXISTS `cache_invalidation`;
+CREATE TABLE `cache_invalidation` (
+    `id` BIGINT(20) NOT NULL AUTO_INCREMENT COMMENT '主键ID（轮询游标）',
+    `cache_name` VARCHAR(32) NOT NULL COMMENT '缓存名称：paymentOrder, refundOrder',
+    `cache_key` VARCHAR(64) NOT NULL COMMENT '缓存键（transaction_id / refund_no）',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    PRIMARY KEY (`id`),
+    KEY `idx_create_time` (`create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='缓存失效日志表';
 
 -- =====================================================
 -- 插入测试数据（可选）
 -- =====================================================
 
 -- 插入测试支付订单
-INSERT INTO `payment_order` (`transaction_id`, `out_trade_no`, `pay_amount`, `subject`, `body`, `uid`, `pay_status`, `request_time`, `success_time`) 
+INSERT INTO `payment_order` (`transaction_id`, `out_trade_no`, `pay_amount`, `refunded_amount`, `subject`, `body`, `uid`, `pay_status`, `request_time`, `success_time`) 
 VALUES 
-('TEST_PAY_001', 'OUT_TRADE_001', 10000, '测试订单1', '这是一个测试订单', 'user_001', 'SUCCESS', NOW(), NOW()),
-('TEST_PAY_002', 'OUT_TRADE_002', 20000, '测试订单2', '这是另一个测试订单', 'user_002', 'PENDING', NOW(), NULL);
+('TEST_PAY_001', 'OUT_TRADE_001', 10000, 5000, '测试订单1', '这是一个测试订单', 'user_001', 'SUCCESS', NOW(), NOW()),
+('TEST_PAY_002', 'OUT_TRADE_002', 20000, 0, '测试订单2', '这是另一个测试订单', 'user_002', 'PENDING', NOW(), NULL);
 
 -- 插入测试退款订单
 INSERT INTO `refund_order` (`refund_no`, `transaction_id`, `out_refund_no`, `pay_amount`, `refund_amount`, `refund_status`, `request_time`, `success_time`) 
@@ -103,5 +235,5 @@ VALUES
 -- 插入测试账单记录
 INSERT INTO `bill_record` (`bill_date`, `pay_code`, `trans_type`, `request_time`, `success_time`, `transaction_id`, `out_transaction_id`, `trans_status`, `trans_amount`, `user_trans_real_amount`) 
 VALUES 
-(DATE_FORMAT(NOW(), '%Y-%m-%d'), 'SDKDEMO_OPENPAY', 'pay', DATE_FORMAT(NOW(), '%Y-%m-%d %H:%i:%s'), DATE_FORMAT(NOW(), '%Y-%m-%d %H:%i:%s'), 'TEST_PAY_001', 'OUT_TRADE_001', 'S', 10000, 10000),
-(DATE_FORMAT(NOW(), '%Y-%m-%d'), 'SDKDEMO_OPENPAY', 'refund', DATE_FORMAT(NOW(), '%Y-%m-%d %H:%i:%s'), DATE_FORMAT(NOW(), '%Y-%m-%d %H:%i:%s'), 'TEST_REFUND_001', 'OUT_REFUND_001', 'S', 5000, 5000);
+(CURDATE(), 'SDKDEMO_OPENPAY', 'pay', NOW(), NOW(), 'TEST_PAY_001', 'OUT_TRADE_001', 'S', 10000, 10000),
+(CURDATE(), 'SDKDEMO_OPENPAY', 'refund', NOW(), NOW(), 'TEST_REFUND_001', 'OUT_REFUND_001', 'S', 5000, 5000);
@@ -0,0 +1,23 @@
+-- 已有数据库升级脚本：bill_record 按 bill_date 月分区
+-- 新建数据库直接执行 schema.sql，无需执行本脚本；
+-- 需先执行 bill_record_temporal_columns.sql 和 bill_record_unique_transaction.sql（本脚本重建 uk_transaction_id_trans_type）
+--
+-- 说明：
+-- 1. 分区表的主键和唯一索引必须包含分区列：主键改为 (id, bill_date)，唯一索引追加 bill_date。
+--    同一笔交易的 bill_date 由成功时间确定，不会变化，去重语义不变
+-- 2. 全部数据先放入兜底分区 p_max，应用启动后 BillRecordPartitionTask 按最早的账单月份拆出各月分区
+--    （一次 REORGANIZE，数据量较大时在低峰期启动，或提前在从库验证耗时）
+-- 3. 两条 ALTER 都会重建表并阻塞写入，数据量较大时在低峰期执行，或使用 gh-ost / pt-online-schema-change
+-- 4. payment_order、refund_order 不分区：幂等依赖 transaction_id、refund_no 全局唯一，
+--    分区后唯一索引必须包含分区列，无法再保证全局唯一
+
+ALTER TABLE `bill_record`
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (`id`, `bill_date`),
+    DROP INDEX `uk_transaction_id_trans_type`,
+    ADD UNIQUE KEY `uk_transaction_id_trans_type` (`transaction_id`, `trans_type`, `bill_date`);
+
+ALTER TABLE `bill_record`
+    PARTITION BY RANGE COLUMNS (`bill_date`) (
+        PARTITION `p_max` VALUES LESS THAN (MAXVALUE)
+    );
@@ -0,0 +1,24 @@
+-- 已有数据库升级脚本：bill_record 日期时间列改为 DATE/DATETIME，并调整账单导出索引
+-- 新建数据库直接执行 schema.sql，无需执行本脚本
+--
+-- 说明：
+-- 1. 原列为 'yyyy-MM-dd' / 'yyyy-MM-dd HH:mm:ss' 格式的字符串，MODIFY 时由 MySQL 原样转换；
+--    空字符串在严格模式下无法转换为 DATETIME，先置为 NULL
+-- 2. 修改列类型会重建表并阻塞写入，数据量较大时在低峰期执行，或使用 gh-ost / pt-online-schema-change
+-- 3. 执行前先确认没有格式异常的数据（下面的检查语句应返回 0）
+
+SELECT COUNT(*) FROM `bill_record`
+WHERE STR_TO_DATE(`bill_date`, '%Y-%m-%d') IS NULL
+   OR (`request_time` <> '' AND STR_TO_DATE(`request_time`, '%Y-%m-%d %H:%i:%s') IS NULL)
+   OR (`success_time` <> '' AND STR_TO_DATE(`success_time`, '%Y-%m-%d %H:%i:%s') IS NULL);
+
+UPDATE `bill_record` SET `request_time` = NULL WHERE `request_time` = '';
+UPDATE `bill_record` SET `success_time` = NULL WHERE `success_time` = '';
+
+ALTER TABLE `bill_record`
+    MODIFY `bill_date` DATE NOT NULL COMMENT '账单日期',
+    MODIFY `request_time` DATETIME DEFAULT NULL COMMENT '请求时间',
+    MODIFY `success_time` DATETIME DEFAULT NULL COMMENT '成功时间',
+    DROP INDEX `idx_bill_date`,
+    DROP INDEX `idx_trans_type`,
+    ADD KEY `idx_bill_date_trans_type_create_time` (`bill_date`, `trans_type`, `create_time`);
@@ -0,0 +1,23 @@
+-- 已有数据库升级脚本：bill_record 增加 (transaction_id, trans_type) 唯一索引
+-- 新建数据库直接执行 schema.sql，无需执行本脚本；需在 bill_record_partitioning.sql 之前执行
+--
+-- 说明：
+-- 1. 异步写入账单（write-behind）的 INSERT IGNORE 和对账补写依赖该唯一索引去重，未执行本脚本时会写入重复的账单行
+-- 2. 先删除已有的重复记录（同一笔交易保留主键最小的一条），下面的检查语句执行后应返回 0
+-- 3. 唯一索引以 transaction_id 开头，覆盖原 idx_transaction_id 的查询，原索引删除
+-- 4. ALTER 会重建索引，数据量较大时在低峰期执行
+
+DELETE b1 FROM `bill_record` b1
+JOIN `bill_record` b2
+  ON b1.`transaction_id` = b2.`transaction_id`
+ AND b1.`trans_type` = b2.`trans_type`
+ AND b1.`id` > b2.`id`;
+
+SELECT COUNT(*) FROM (
+    SELECT `transaction_id`, `trans_type` FROM `bill_record`
+    GROUP BY `transaction_id`, `trans_type` HAVING COUNT(*) > 1
+) t;
+
+ALTER TABLE `bill_record`
+    ADD UNIQUE KEY `uk_transaction_id_trans_type` (`transaction_id`, `trans_type`),
+    DROP INDEX `idx_transaction_id`;
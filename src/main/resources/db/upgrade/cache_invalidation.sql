@@ -0,0 +1,11 @@
+-- 已有数据库升级脚本：创建缓存失效日志表（多实例部署 tbsg.cache.invalidation.mode=db-polling 时使用）
+-- 新建数据库直接执行 schema.sql，无需执行本脚本
+
+CREATE TABLE IF NOT EXISTS `cache_invalidation` (
+    `id` BIGINT(20) NOT NULL AUTO_INCREMENT COMMENT '主键ID（轮询游标）',
+    `cache_name` VARCHAR(32) NOT NULL COMMENT '缓存名称：paymentOrder, refundOrder',
+    `cache_key` VARCHAR(64) NOT NULL COMMENT '缓存键（transaction_id / refund_no）',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    PRIMARY KEY (`id`),
+    KEY `idx_create_time` (`create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='缓存失效日志表';
@@ -0,0 +1,18 @@
+-- 已有数据库升级脚本：创建订单归档索引表，payment_order 的 update_time 索引改为 (update_time, id)
+-- 新建数据库直接执行 schema.sql，无需执行本脚本；需先执行 order_update_time_index.sql
+--
+-- 说明：归档按 (update_time, id) 游标分批读取，索引包含游标的两列后每批只扫描 LIMIT 条，不再全表扫描和排序
+
+CREATE TABLE IF NOT EXISTS `order_archive_index` (
+    `id` BIGINT(20) NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+    `order_type` VARCHAR(10) NOT NULL COMMENT '订单类型：pay-支付订单, refund-退款订单',
+    `biz_no` VARCHAR(64) NOT NULL COMMENT '业务单号（支付订单为 transaction_id，退款订单为 refund_no）',
+    `object_name` VARCHAR(256) NOT NULL COMMENT '归档文件的 OSS 对象名称',
+    `archive_time` DATETIME NOT NULL COMMENT '归档时间',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_order_type_biz_no` (`order_type`, `biz_no`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='订单归档索引表';
+
+ALTER TABLE `payment_order`
+    DROP INDEX `idx_update_time`,
+    ADD KEY `idx_update_time` (`update_time`, `id`);
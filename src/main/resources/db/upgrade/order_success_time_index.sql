@@ -0,0 +1,11 @@
+-- 已有数据库升级脚本：payment_order、refund_order 增加 success_time 索引
+-- 新建数据库直接执行 schema.sql，无需执行本脚本
+--
+-- 说明：
+-- 1. 账单来源为订单表（tbsg.bill.source=orders）时按成功时间区间流式读取当天的支付和退款订单，
+--    没有索引时每次出账都会全表扫描两张订单表
+-- 2. 在线添加二级索引（ALGORITHM=INPLACE）不阻塞读写，数据量较大时仍建议在低峰期执行
+
+ALTER TABLE `payment_order` ADD KEY `idx_success_time` (`success_time`);
+
+ALTER TABLE `refund_order` ADD KEY `idx_success_time` (`success_time`);
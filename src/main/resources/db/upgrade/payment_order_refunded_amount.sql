@@ -0,0 +1,20 @@
+-- 已有数据库升级脚本：payment_order 增加已退款金额列并按已成功的退款回填
+-- 新建数据库直接执行 schema.sql，无需执行本脚本
+--
+-- 说明：
+-- 1. 退款时按 refunded_amount + 本次金额 <= pay_amount 条件累加，未回填时已部分退款的订单从 0 开始，会被再次全额退款
+-- 2. 旧版本退款时不维护该列：ALTER 可以提前执行，回填 UPDATE 需在旧版本停止退款后、新版本启动前执行
+-- 3. 回填后下面的检查语句应返回 0（已退款金额不应超过支付金额）
+
+ALTER TABLE `payment_order`
+    ADD COLUMN `refunded_amount` INT(11) NOT NULL DEFAULT 0 COMMENT '已退款金额（单位：分），与退款单在同一事务中条件累加' AFTER `pay_amount`;
+
+UPDATE `payment_order` p
+SET p.`refunded_amount` = (
+    SELECT COALESCE(SUM(r.`refund_amount`), 0)
+    FROM `refund_order` r
+    WHERE r.`transaction_id` = p.`transaction_id`
+      AND r.`refund_status` = 'SUCCESS'
+);
+
+SELECT COUNT(*) FROM `payment_order` WHERE `refunded_amount` > `pay_amount`;
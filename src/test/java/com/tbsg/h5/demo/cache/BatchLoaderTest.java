@@ -0,0 +1,150 @@
+package com.tbsg.h5.demo.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * BatchLoader 测试
+ *
+ * @author demo
+ */
+class BatchLoaderTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    /**
+     * 每次批量查询收到的键
+     */
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+    private BatchLoader<String> loader;
+
+    @AfterEach
+    void tearDown() {
+        if (loader != null) {
+            loader.shutdown();
+        }
+        callers.shutdownNow();
+    }
+
+    @Test
+    void concurrentLookupsWithinWindowShareOneQuery() throws Exception {
+        loader = newLoader(echo(), 200, 100);
+
+        List<CompletableFuture<String>> results = loadAll("a", "b", "c");
+
+        for (CompletableFuture<String> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+        assertThat(results).extracting(CompletableFuture::join).containsExactly("A", "B", "C");
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsExactlyInAnyOrder("a", "b", "c");
+        assertThat(meterRegistry.get("order.batch.queries").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void fullBatchRunsWithoutWaitingForWindow() throws Exception {
+        loader = newLoader(echo(), 60_000, 2);
+
+        List<CompletableFuture<String>> results = loadAll("a", "b");
+
+        // 窗口为 1 分钟，攒够 maxBatchSize 后由最后到达的调用方直接执行
+        for (CompletableFuture<String> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+        assertThat(results).extracting(CompletableFuture::join).containsExactly("A", "B");
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsExactlyInAnyOrder("a", "b");
+    }
+
+    @Test
+    void duplicateKeysAreQueriedOnce() throws Exception {
+        loader = newLoader(echo(), 200, 100);
+
+        List<CompletableFuture<String>> results = loadAll("a", "a", "b", "a");
+
+        for (CompletableFuture<String> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+        assertThat(results).extracting(CompletableFuture::join).containsExactly("A", "A", "B", "A");
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsExactlyInAnyOrder("a", "b");
+    }
+
+    @Test
+    void missingKeyReturnsNull() {
+        loader = newLoader(keys -> Collections.emptyMap(), 10, 100);
+
+        assertThat(loader.load("a")).isNull();
+    }
+
+    @Test
+    void failureIsDeliveredToEveryWaiter() throws Exception {
+        loader = newLoader(keys -> {
+            throw new IllegalStateException("db down");
+        }, 200, 100);
+
+        List<CompletableFuture<String>> results = loadAll("a", "b", "c");
+
+        for (CompletableFuture<String> result : results) {
+            assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(IllegalStateException.class)
+                    .hasRootCauseMessage("db down");
+        }
+        assertThat(batches).hasSize(1);
+    }
+
+    @Test
+    void disabledLoaderQueriesEachKeyDirectly() {
+        loader = new BatchLoader<>("test", record(echo()), false, 60_000, 100, meterRegistry);
+
+        assertThat(loader.load("a")).isEqualTo("A");
+        assertThat(loader.load("a")).isEqualTo("A");
+        assertThat(batches).containsExactly(Collections.singletonList("a"), Collections.singletonList("a"));
+    }
+
+    private BatchLoader<String> newLoader(Function<List<String>, Map<String, String>> batchFunction,
+                                          long windowMillis, int maxBatchSize) {
+        return new BatchLoader<>("test", record(batchFunction), true, windowMillis, maxBatchSize, meterRegistry);
+    }
+
+    private Function<List<String>, Map<String, String>> record(Function<List<String>, Map<String, String>> batchFunction) {
+        return keys -> {
+            batches.add(new ArrayList<>(keys));
+            return batchFunction.apply(keys);
+        };
+    }
+
+    private static Function<List<String>, Map<String, String>> echo() {
+        return keys -> keys.stream().collect(Collectors.toMap(Function.identity(), String::toUpperCase));
+    }
+
+    /**
+     * 每个键由单独的线程并发查询，结果顺序与参数一致
+     */
+    private List<CompletableFuture<String>> loadAll(String... keys) {
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (String key : keys) {
+            results.add(CompletableFuture.supplyAsync(() -> loader.load(key), callers));
+        }
+        return results;
+    }
+}
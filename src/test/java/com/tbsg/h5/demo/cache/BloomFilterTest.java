@@ -0,0 +1,91 @@
+package com.tbsg.h5.demo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * BloomFilter 测试
+ *
+ * @author demo
+ */
+class BloomFilterTest {
+
+    @Test
+    void sizingFollowsExpectedInsertionsAndFpp() {
+        // m = ceil(-1000 * ln(0.01) / ln2^2) = 9586，向上取整到 64 位 = 9600；k = round(9600 / 1000 * ln2) = 7
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+
+        assertThat(filter.getBitSize()).isEqualTo(9600);
+        assertThat(filter.getHashCount()).isEqualTo(7);
+        assertThat(filter.memoryBytes()).isEqualTo(1200);
+        assertThat(filter.getInsertions()).isZero();
+        assertThat(filter.expectedFpp()).isZero();
+    }
+
+    @Test
+    void noFalseNegativesAndFppNearTarget() {
+        int n = 10_000;
+        BloomFilter filter = new BloomFilter(n, 0.01);
+        for (int i = 0; i < n; i++) {
+            filter.put("T" + i);
+        }
+        for (int i = 0; i < n; i++) {
+            assertThat(filter.mightContain("T" + i)).isTrue();
+        }
+
+        int probes = 100_000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("R" + i)) {
+                falsePositives++;
+            }
+        }
+        assertThat((double) falsePositives / probes).isLessThan(0.02);
+        assertThat(filter.expectedFpp()).isBetween(0.005, 0.015);
+        assertThat(filter.getInsertions()).isEqualTo(n);
+    }
+
+    @Test
+    void concurrentPutsDoNotLoseBits() throws Exception {
+        // 多个线程同时置位同一个 long 时依赖 put 的 CAS 重试，丢失的位会表现为漏判
+        int threads = 8;
+        int perThread = 2_000;
+        BloomFilter filter = new BloomFilter((long) threads * perThread, 0.01);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        filter.put(thread + "-" + i);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(filter.getInsertions()).isEqualTo((long) threads * perThread);
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < perThread; i++) {
+                assertThat(filter.mightContain(t + "-" + i)).isTrue();
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.tbsg.h5.demo.service;
+
+import com.aliyun.oss.OSS;
+import com.aliyun.oss.model.AbortMultipartUploadRequest;
+import com.aliyun.oss.model.CompleteMultipartUploadRequest;
+import com.aliyun.oss.model.CompleteMultipartUploadResult;
+import com.aliyun.oss.model.InitiateMultipartUploadRequest;
+import com.aliyun.oss.model.InitiateMultipartUploadResult;
+import com.aliyun.oss.model.PartETag;
+import com.aliyun.oss.model.PutObjectResult;
+import com.aliyun.oss.model.UploadPartRequest;
+import com.aliyun.oss.model.UploadPartResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地 OSS 替身
+ *
+ * 在内存中实现分片上传相关的 OSS 接口（putObject、initiate/upload/complete/abort MultipartUpload），
+ * 其余方法抛出 UnsupportedOperationException。可以指定某个分片号上传失败，用于验证失败时的清理逻辑
+ *
+ * @author demo
+ */
+class LocalOssStandIn {
+
+    /**
+     * 已完成的对象：objectName -> 内容
+     */
+    final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+    /**
+     * 进行中的分片上传：uploadId -> (partNumber -> 内容)
+     */
+    final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+
+    /**
+     * 已取消的分片上传
+     */
+    final Set<String> abortedUploadIds = ConcurrentHashMap.newKeySet();
+
+    final AtomicInteger putObjectCount = new AtomicInteger();
+
+    /**
+     * 上传失败的分片号，0 表示不失败
+     */
+    volatile int failingPartNumber;
+
+    OSS client() {
+        return (OSS) Proxy.newProxyInstance(OSS.class.getClassLoader(), new Class<?>[]{OSS.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "putObject":
+                            return putObject(args);
+                        case "initiateMultipartUpload":
+                            return initiate((InitiateMultipartUploadRequest) args[0]);
+                        case "uploadPart":
+                            return uploadPart((UploadPartRequest) args[0]);
+                        case "completeMultipartUpload":
+                            return complete((CompleteMultipartUploadRequest) args[0]);
+                        case "abortMultipartUpload":
+                            AbortMultipartUploadRequest request = (AbortMultipartUploadRequest) args[0];
+                            uploads.remove(request.getUploadId());
+                            abortedUploadIds.add(request.getUploadId());
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private PutObjectResult putObject(Object[] args) {
+        if (args.length != 4 || !(args[2] instanceof InputStream)) {
+            throw new UnsupportedOperationException("putObject");
+        }
+        objects.put((String) args[1], readAll((InputStream) args[2]));
+        putObjectCount.incrementAndGet();
+        return new PutObjectResult();
+    }
+
+    private InitiateMultipartUploadResult initiate(InitiateMultipartUploadRequest request) {
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new ConcurrentSkipListMap<>());
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    private UploadPartResult uploadPart(UploadPartRequest request) {
+        if (request.getPartNumber() == failingPartNumber) {
+            throw new IllegalStateException("模拟分片上传失败: " + request.getPartNumber());
+        }
+        Map<Integer, byte[]> parts = uploads.get(request.getUploadId());
+        if (parts == null) {
+            throw new IllegalStateException("分片上传不存在: " + request.getUploadId());
+        }
+        parts.put(request.getPartNumber(), readAll(request.getInputStream()));
+        UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag("etag-" + request.getPartNumber());
+        return result;
+    }
+
+    private CompleteMultipartUploadResult complete(CompleteMultipartUploadRequest request) {
+        Map<Integer, byte[]> parts = uploads.remove(request.getUploadId());
+        if (parts == null) {
+            throw new IllegalStateException("分片上传不存在: " + request.getUploadId());
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (PartETag partETag : request.getPartETags()) {
+            byte[] part = parts.get(partETag.getPartNumber());
+            content.write(part, 0, part.length);
+        }
+        objects.put(request.getKey(), content.toByteArray());
+        return new CompleteMultipartUploadResult();
+    }
+
+    private static byte[] readAll(InputStream in) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
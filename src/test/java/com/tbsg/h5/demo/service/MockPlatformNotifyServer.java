@@ -0,0 +1,96 @@
+package com.tbsg.h5.demo.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 模拟淘宝闪购回调接收端
+ *
+ * 在本机随机端口启动的内嵌 HTTP 服务，代替淘宝闪购的 notifyUrl，
+ * 通过 failureRate、latencyMillis 模拟平台失败和响应慢，用于验证回调发送、重试和并发限制
+ *
+ * @author demo
+ */
+class MockPlatformNotifyServer implements AutoCloseable {
+
+    /**
+     * 返回失败的比例（0~1）
+     */
+    volatile double failureRate;
+
+    /**
+     * 每次响应前的等待时间（毫秒）
+     */
+    volatile long latencyMillis;
+
+    final AtomicLong received = new AtomicLong();
+
+    final AtomicLong failed = new AtomicLong();
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    MockPlatformNotifyServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/mock/platform/notify", this::receive);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * 回调地址（支付、退款共用）
+     */
+    String notifyUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/mock/platform/notify";
+    }
+
+    private void receive(HttpExchange exchange) throws IOException {
+        readAll(exchange.getRequestBody());
+        received.incrementAndGet();
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        boolean fail = ThreadLocalRandom.current().nextDouble() < failureRate;
+        if (fail) {
+            failed.incrementAndGet();
+        }
+        String code = fail ? "FAIL" : "SUCCESS";
+        byte[] body = ("{\"returnCode\":\"" + code + "\",\"returnMsg\":\"" + code + "\"}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(fail ? 500 : 200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
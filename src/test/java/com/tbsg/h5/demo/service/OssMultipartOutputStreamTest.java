@@ -0,0 +1,111 @@
+package com.tbsg.h5.demo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * OssMultipartOutputStream 测试（基于本地 OSS 替身）
+ *
+ * @author demo
+ */
+class OssMultipartOutputStreamTest {
+
+    private static final String BUCKET = "test-bucket";
+
+    private static final String OBJECT = "bills/test.csv";
+
+    private static final int PART_SIZE = 1024;
+
+    private final LocalOssStandIn oss = new LocalOssStandIn();
+
+    @Test
+    void smallContentFallsBackToPutObject() throws IOException {
+        byte[] content = randomBytes(PART_SIZE - 1);
+        OssMultipartOutputStream out = newStream(Runnable::run);
+        out.write(content);
+        out.close();
+
+        assertThat(oss.objects.get(OBJECT)).isEqualTo(content);
+        assertThat(oss.putObjectCount.get()).isEqualTo(1);
+        assertThat(oss.uploads).isEmpty();
+        assertThat(out.getTotalBytes()).isEqualTo(content.length);
+    }
+
+    @Test
+    void partsUploadedInParallelAreCompletedInOrder() throws Exception {
+        byte[] content = randomBytes(PART_SIZE * 7 + 123);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            OssMultipartOutputStream out = newStream(executor);
+            // 以不对齐分片的块大小写入
+            for (int off = 0; off < content.length; off += 300) {
+                out.write(content, off, Math.min(300, content.length - off));
+            }
+            out.close();
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(oss.objects.get(OBJECT)).isEqualTo(content);
+        assertThat(oss.putObjectCount.get()).isZero();
+        assertThat(oss.uploads).isEmpty();
+        assertThat(oss.abortedUploadIds).isEmpty();
+    }
+
+    @Test
+    void failedPartDetectedOnCloseAbortsUpload() throws IOException {
+        oss.failingPartNumber = 1;
+        OssMultipartOutputStream out = newStream(Runnable::run);
+        out.write(randomBytes(PART_SIZE + 10));
+
+        assertThatThrownBy(out::close).isInstanceOf(IOException.class);
+        assertThat(oss.abortedUploadIds).hasSize(1);
+        assertThat(oss.uploads).isEmpty();
+        assertThat(oss.objects).doesNotContainKey(OBJECT);
+    }
+
+    @Test
+    void failedPartStopsWriterAndAbortCleansUp() throws IOException {
+        oss.failingPartNumber = 2;
+        OssMultipartOutputStream out = newStream(Runnable::run);
+
+        assertThatThrownBy(() -> out.write(randomBytes(PART_SIZE * 4))).isInstanceOf(IOException.class);
+        out.abort();
+
+        assertThat(oss.abortedUploadIds).hasSize(1);
+        assertThat(oss.uploads).isEmpty();
+        assertThat(oss.objects).doesNotContainKey(OBJECT);
+    }
+
+    @Test
+    void abortAfterPartialWriteLeavesNoObject() throws IOException {
+        OssMultipartOutputStream out = newStream(Runnable::run);
+        out.write(randomBytes(PART_SIZE * 2 + 1));
+        out.abort();
+
+        assertThat(oss.abortedUploadIds).hasSize(1);
+        assertThat(oss.uploads).isEmpty();
+        assertThat(oss.objects).isEmpty();
+        assertThatThrownBy(() -> out.write(1)).isInstanceOf(IOException.class);
+    }
+
+    private OssMultipartOutputStream newStream(Executor executor) {
+        return new OssMultipartOutputStream(oss.client(), BUCKET, OBJECT, null, PART_SIZE, 2, executor);
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
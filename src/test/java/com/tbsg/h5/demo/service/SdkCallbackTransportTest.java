@@ -0,0 +1,115 @@
+package com.tbsg.h5.demo.service;
+
+import com.tbsg.h5.demo.controller.TbsgCallbackController;
+import com.tbsg.h5.demo.enums.CallbackResult;
+import eleme.openapi.h5.sdk.pay.model.request.PayCallbackRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * SdkCallbackTransport 测试（基于内嵌的模拟淘宝闪购回调接收端）
+ *
+ * @author demo
+ */
+class SdkCallbackTransportTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private MockPlatformNotifyServer platform;
+
+    private SdkCallbackTransport transport;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        platform = new MockPlatformNotifyServer();
+        transport = new SdkCallbackTransport();
+        ReflectionTestUtils.setField(transport, "tbsgCallbackController", new HttpPostCallbackController());
+        ReflectionTestUtils.setField(transport, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(transport, "maxConnectionsPerHost", 1);
+        ReflectionTestUtils.setField(transport, "notifyPoolSize", 8);
+        ReflectionTestUtils.setField(transport, "acquireTimeoutMillis", 50L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        platform.close();
+    }
+
+    @Test
+    void resultFollowsPlatformResponse() {
+        assertThat(transport.sendPayCallback(new PayCallbackRequest(), platform.notifyUrl()))
+                .isEqualTo(CallbackResult.DELIVERED);
+
+        platform.failureRate = 1;
+        assertThat(transport.sendPayCallback(new PayCallbackRequest(), platform.notifyUrl()))
+                .isEqualTo(CallbackResult.FAILED);
+        assertThat(platform.received.get()).isEqualTo(2);
+    }
+
+    @Test
+    void saturatedHostIsNotSent() throws Exception {
+        platform.latencyMillis = 500;
+        CompletableFuture<CallbackResult> first = CompletableFuture.supplyAsync(
+                () -> transport.sendPayCallback(new PayCallbackRequest(), platform.notifyUrl()));
+        long deadline = System.currentTimeMillis() + 2000;
+        while (platform.received.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(transport.sendPayCallback(new PayCallbackRequest(), platform.notifyUrl()))
+                .isEqualTo(CallbackResult.NOT_SENT);
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(CallbackResult.DELIVERED);
+        assertThat(platform.received.get()).isEqualTo(1);
+        assertThat(meterRegistry.counter("notify.http.saturated", "host", hostOf(platform.notifyUrl())).count())
+                .isEqualTo(1);
+    }
+
+    private static String hostOf(String notifyUrl) {
+        URL url = toUrl(notifyUrl);
+        return url.getHost() + ":" + url.getPort();
+    }
+
+    private static URL toUrl(String notifyUrl) {
+        try {
+            return new URL(notifyUrl);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(notifyUrl, e);
+        }
+    }
+
+    /**
+     * 不经 SDK 签名，直接用 HttpURLConnection POST 到回调地址，与 SDK 的连接行为一致
+     */
+    private static class HttpPostCallbackController extends TbsgCallbackController {
+
+        @Override
+        public boolean notifyPayCallback(PayCallbackRequest payCallbackRequest, String notifyUrl) {
+            try {
+                HttpURLConnection connection = (HttpURLConnection) toUrl(notifyUrl).openConnection();
+                connection.setRequestMethod("POST");
+                connection.setDoOutput(true);
+                connection.setConnectTimeout(1000);
+                connection.setReadTimeout(5000);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write("{}".getBytes(StandardCharsets.UTF_8));
+                }
+                return connection.getResponseCode() == HttpURLConnection.HTTP_OK;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}